@@ -16,7 +16,14 @@
 
 package com.solace.samples;
 
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
@@ -25,14 +32,25 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.solace.samples.features.LastValueCache;
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt basic replier
  *
  */
 public class BasicReplier {
+
+    // Snapshot mode: memory bound of the last value cache unless one is
+    // given, and roughly how many payload bytes go into each page of a
+    // snapshot reply
+    static final long DEFAULT_CACHE_MAX_MB = 64;
+    static final int PAGE_MAX_BYTES = 64 * 1024;
     
     public void run(String... args) {
         System.out.println("BasicReplier initializing...");
@@ -40,6 +58,14 @@ public class BasicReplier {
         String host = args[0];
         String username = args[1];
         String password = args[2];
+        // Snapshot mode: cache the last value of every topic matching this filter
+        final String dataTopicFilter = args.length > 3 ? args[3] : null;
+        // Once the cached payloads reach this size the least recently updated topics are evicted
+        long cacheMaxMegabytes = DEFAULT_CACHE_MAX_MB;
+        if (args.length > 4) cacheMaxMegabytes = Long.parseLong(args[4]);
+        final LastValueCache cache = dataTopicFilter == null ? null : new LastValueCache(cacheMaxMegabytes * 1024 * 1024);
+        // Snapshot pages are sent from their own thread so the cache keeps updating meanwhile
+        final ExecutorService snapshotSender = Executors.newSingleThreadExecutor();
 
         try {
             // Create an Mqtt client
@@ -48,6 +74,8 @@ public class BasicReplier {
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
             
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + host);
@@ -61,9 +89,16 @@ public class BasicReplier {
             final String requestTopic = "T/GettingStarted/request";
             
             // Callback - Anonymous inner-class for receiving request messages
-            mqttClient.setCallback(new MqttCallback() {
+            mqttClient.setCallback(MqttFlightEvents.recordArrivals(new MqttCallback() {
 
                 public void messageArrived(String topic, MqttMessage message) throws Exception {
+                    // In snapshot mode everything except requests is data for the cache
+                    if (cache != null && !topic.equals(requestTopic)) {
+                        cache.put(topic, message.getPayload());
+                        return;
+                    }
+                    // Flight recorder event timing the request until the reply is sent
+                    MqttFlightEvents.RequestReplyEvent requestEvent = MqttFlightEvents.beginRequestReply();
                     try {
                         // Parse the received request message and convert payload to a JSONObject
                         JSONObject jsonPayload = new JSONObject(new String(message.getPayload()));
@@ -77,6 +112,13 @@ public class BasicReplier {
                             "\n\tCorrel. Id: " + correlationId + 
                             "\n\tReply To:   " + replyTo + 
                             "\n\tMessage:    " + messageContent + "\n");
+
+                        // A request with a topic filter asks for a snapshot of the cache
+                        if (cache != null && jsonPayload.has("topicFilter")) {
+                            sendSnapshot(mqttClient, snapshotSender, cache.snapshot(jsonPayload.getString("topicFilter")),
+                                    correlationId, replyTo, requestEvent, topic, message);
+                            return;
+                        }
                     
                         // Create the response payload in JSON format and set correlationId
                         // to the id received in the request message above. Requestor will
@@ -95,9 +137,10 @@ public class BasicReplier {
                         // Publish the response message to the replyTo topic retrieved 
                         // from the request message above
                         MqttTopic mqttTopic = mqttClient.getTopic(replyTo);
-                        mqttTopic.publish(respMessage);
+                        MqttFlightEvents.publish(mqttTopic, respMessage);
+                        MqttFlightEvents.commitRequestReply(requestEvent, "replier", correlationId, topic, message);
                         
-                        latch.countDown(); // unblock main thread
+                        if (cache == null) latch.countDown(); // unblock main thread
                     } catch (JSONException ex) {
                         System.out.println("Exception parsing request message!");
                         ex.printStackTrace();
@@ -112,22 +155,41 @@ public class BasicReplier {
                 public void deliveryComplete(IMqttDeliveryToken token) {
                 }
 
-            });
+            }));
             
             // Subscribe client to the topic filter with a QoS level of 0
             System.out.println("Subscribing client to request topic: " + requestTopic);
             mqttClient.subscribe(requestTopic, 0);
 
-            System.out.println("Waiting for request message...");
-            // Wait for till we have received a request and sent a response
-            try {
-                latch.await(); // block here until message received, and latch will flip
-            } catch (InterruptedException e) {
-                System.out.println("I was awoken while waiting");
+            if (cache == null) {
+                System.out.println("Waiting for request message...");
+                // Wait for till we have received a request and sent a response
+                try {
+                    latch.await(); // block here until message received, and latch will flip
+                } catch (InterruptedException e) {
+                    System.out.println("I was awoken while waiting");
+                }
+            } else {
+                // Subscribe client to the data topics to fill the cache
+                System.out.println("Subscribing client to data topic: " + dataTopicFilter);
+                mqttClient.subscribe(dataTopicFilter, 0);
+                System.out.println("Serving snapshot requests. Press [ENTER] to quit.");
+                try {
+                    while (System.in.available() == 0 && !latch.await(1, TimeUnit.SECONDS)) {
+                        // keep serving until [ENTER] or the connection is lost
+                    }
+                } catch (InterruptedException e) {
+                    System.out.println("I was awoken while waiting");
+                } catch (IOException e) {
+                    // stdin unavailable, stop serving
+                }
+                System.out.println("Cache " + cache);
             }
+            snapshotSender.shutdown();
             
             // Disconnect the client
             mqttClient.disconnect();
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Exiting");
 
             System.exit(0);
@@ -141,10 +203,59 @@ public class BasicReplier {
         }
     }
 
+    /**
+     * Sends snapshot entries to the requestor's reply-to topic, in pages of
+     * about PAGE_MAX_BYTES of payload each. Every page carries the request's
+     * correlationId and the last one has lastPage set. The request event is
+     * committed once the last page is sent.
+     */
+    private void sendSnapshot(final MqttClient mqttClient, ExecutorService sender,
+            final List<Map.Entry<String, byte[]>> entries, final String correlationId, final String replyTo,
+            final MqttFlightEvents.RequestReplyEvent requestEvent, final String requestTopic, final MqttMessage request) {
+        sender.execute(new Runnable() {
+            public void run() {
+                int page = 0;
+                int next = 0;
+                try {
+                    do {
+                        // Fill a page with at least one entry, up to the page size
+                        JSONArray pageEntries = new JSONArray();
+                        int pageBytes = 0;
+                        while (next < entries.size() && (pageEntries.length() == 0 || pageBytes < PAGE_MAX_BYTES)) {
+                            Map.Entry<String, byte[]> entry = entries.get(next++);
+                            String payload = Base64.getEncoder().encodeToString(entry.getValue());
+                            JSONObject item = new JSONObject();
+                            item.put("topic", entry.getKey());
+                            item.put("payload", payload);
+                            pageEntries.put(item);
+                            pageBytes += payload.length();
+                        }
+
+                        JSONObject obj = new JSONObject();
+                        obj.put("correlationId", correlationId);
+                        obj.put("page", page++);
+                        obj.put("lastPage", next == entries.size());
+                        obj.put("entries", pageEntries);
+
+                        MqttMessage respMessage = new MqttMessage(obj.toString().getBytes());
+                        respMessage.setQos(0);
+                        MqttFlightEvents.publish(mqttClient.getTopic(replyTo), respMessage);
+                    } while (next < entries.size());
+                    MqttFlightEvents.commitRequestReply(requestEvent, "replier", correlationId, requestTopic, request);
+                    System.out.println("Sent snapshot of " + entries.size() + " topics in " + page + " pages to: " + replyTo);
+                } catch (MqttException me) {
+                    System.out.println("Exception sending snapshot: " + me);
+                }
+            }
+        });
+    }
+
     public static void main(String[] args) {
         // Check command line arguments
-        if (args.length != 3) {
-            System.out.println("Usage: basicReplier tcp://<host:port> <client-username> <client-password>");
+        if (args.length < 3 || args.length > 5) {
+            System.out.println("Usage: basicReplier <tcp|ssl>://<host:port> <client-username> <client-password> [data-topic-filter] [cache-max-mb]");
+            System.out.println("  data-topic-filter: cache the last value of these topics and answer snapshot requests");
+            System.out.println("  cache-max-mb:      memory bound of the cache, evicting the least recently updated topics (default " + DEFAULT_CACHE_MAX_MB + ")");
             System.out.println();
             System.exit(-1);
         }
@@ -16,6 +16,7 @@
 
 package com.solace.samples;
 
+import java.util.Base64;
 import java.util.UUID;
 import java.util.concurrent.Semaphore;
 
@@ -25,9 +26,13 @@ import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 //import org.json.simple.parser.ParseException;
 //import org.json.simple.parser.JSONParser;
 
@@ -39,6 +44,10 @@ public class BasicRequestor {
     
     // A unique Reply-To Topic for the client is obtained from Solace
     private String replyToTopic = "";
+
+    // Flight recorder event timing the request until its (last) reply arrives
+    private volatile MqttFlightEvents.RequestReplyEvent requestEvent;
+    private volatile String correlationId;
         
     public void run(String... args) {
         System.out.println("BasicRequestor initializing...");
@@ -46,6 +55,8 @@ public class BasicRequestor {
         String host = args[0];
         String username = args[1];
         String password = args[2];
+        // Ask for a snapshot of the replier's last value cache for this topic filter
+        final String snapshotTopicFilter = args.length > 3 ? args[3] : null;
 
         try {
             // Create an Mqtt client
@@ -54,6 +65,8 @@ public class BasicRequestor {
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
             
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + host);
@@ -67,7 +80,7 @@ public class BasicRequestor {
             final String requestTopic = "T/GettingStarted/request";
             
             // Callback - Anonymous inner-class for receiving the Reply-To topic from the Solace broker
-            mqttClient.setCallback(new MqttCallback() {
+            mqttClient.setCallback(MqttFlightEvents.recordArrivals(new MqttCallback() {
                 public void messageArrived(String topic, MqttMessage message) throws Exception {
                     // If the topic is "$SYS/client/reply-to" then set our replyToTopic
                     // to with the contents of the message payload received
@@ -80,13 +93,30 @@ public class BasicRequestor {
                         try {
                             // Parse the response payload and convert to a JSONObject
                             JSONObject jsonPayload = new JSONObject(new String(message.getPayload()));
-                            System.out.println("\nReceived a response!" +
-                                    "\n\tCorrel. Id: " + (String) jsonPayload.get("correlationId") + 
-                                    "\n\tMessage:    " + (String) jsonPayload.get("message") + "\n");
+                            if (snapshotTopicFilter == null) {
+                                System.out.println("\nReceived a response!" +
+                                        "\n\tCorrel. Id: " + (String) jsonPayload.get("correlationId") + 
+                                        "\n\tMessage:    " + (String) jsonPayload.get("message") + "\n");
+                            } else {
+                                // A snapshot response arrives as one or more pages
+                                JSONArray entries = jsonPayload.getJSONArray("entries");
+                                System.out.println("\nReceived snapshot page " + jsonPayload.getInt("page") +
+                                        " with " + entries.length() + " topics:");
+                                for (int i = 0; i < entries.length(); i++) {
+                                    JSONObject entry = entries.getJSONObject(i);
+                                    System.out.println("\t" + entry.getString("topic") + ": " +
+                                            new String(Base64.getDecoder().decode(entry.getString("payload"))));
+                                }
+                                // Keep waiting until the last page has arrived
+                                if (!jsonPayload.getBoolean("lastPage")) return;
+                            }
                         } catch (JSONException ex) {
                             System.out.println("Exception parsing response message!");
                             ex.printStackTrace();
                         }
+                        if (requestEvent != null) {
+                            MqttFlightEvents.commitRequestReply(requestEvent, "requestor", correlationId, topic, message);
+                        }
                     }
                     
                     latch.release(); // unblock main thread
@@ -99,7 +129,7 @@ public class BasicRequestor {
                 
                 public void deliveryComplete(IMqttDeliveryToken token) {
                 }
-            });
+            }));
             
             // Subscribe client to the special Solace topic for requesting a unique
             // Reply-to destination for the MQTT client
@@ -126,9 +156,11 @@ public class BasicRequestor {
             
             // Create the request payload in JSON format
             JSONObject obj = new JSONObject();
-            obj.put("correlationId", UUID.randomUUID().toString());
+            correlationId = UUID.randomUUID().toString();
+            obj.put("correlationId", correlationId);
             obj.put("replyTo", replyToTopic);
             obj.put("message", "Sample Request");
+            if (snapshotTopicFilter != null) obj.put("topicFilter", snapshotTopicFilter);
             String reqPayload = obj.toString();
             
             // Create a request message and set the request payload
@@ -138,7 +170,8 @@ public class BasicRequestor {
             System.out.println("Sending request to: " + requestTopic);
     
             // Publish the request message
-            mqttClient.publish(requestTopic, reqMessage);
+            requestEvent = MqttFlightEvents.beginRequestReply();
+            MqttFlightEvents.publish(mqttClient, requestTopic, reqMessage);
 
             // Wait for till we have received a response
             try {
@@ -149,6 +182,7 @@ public class BasicRequestor {
             
             // Disconnect the client
             mqttClient.disconnect();
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Exiting");
 
             System.exit(0);
@@ -163,8 +197,9 @@ public class BasicRequestor {
 
     public static void main(String[] args) {
         // Check command line arguments
-        if (args.length != 3) {
-            System.out.println("Usage: basicRequestor tcp://<host:port> <client-username> <client-password>");
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Usage: basicRequestor <tcp|ssl>://<host:port> <client-username> <client-password> [snapshot-topic-filter]");
+            System.out.println("  snapshot-topic-filter: request the latest value of these topics from a basicReplier in snapshot mode");
             System.out.println();
             System.exit(-1);
         }
@@ -25,6 +25,9 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt QoS1 message producer with delivery confirmation
  *
@@ -44,6 +47,8 @@ public class ConfirmedDeliveryProducer {
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
             
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + args[0]);
@@ -79,7 +84,7 @@ public class ConfirmedDeliveryProducer {
             System.out.println("Publishing message: " + content);
             
             // Publish the message
-            mqttClient.publish("Q/tutorial", message);
+            MqttFlightEvents.publish(mqttClient, "Q/tutorial", message);
             
             // Wait for the delivery complete notification
             try {
@@ -91,6 +96,7 @@ public class ConfirmedDeliveryProducer {
             // Disconnect the client
             mqttClient.disconnect();
             
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Exiting");
 
             System.exit(0);
@@ -107,7 +113,7 @@ public class ConfirmedDeliveryProducer {
 
 // Check command line arguments
         if (args.length != 3) {
-            System.out.println("Usage: confirmedPublish tcp://<host:port> <client-username> <client-password>");
+            System.out.println("Usage: confirmedPublish <tcp|ssl>://<host:port> <client-username> <client-password>");
             System.out.println();
             System.exit(-1);
         }
@@ -16,8 +16,10 @@
 
 package com.solace.samples;
 
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.IMqttToken;
@@ -27,18 +29,59 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import com.solace.samples.features.DeadlineShedder;
+import com.solace.samples.features.DivertPublisher;
+import com.solace.samples.features.DuplicateFilter;
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.PayloadHeader;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt QoS1 message consumer
  *
  */
 public class QoS1Consumer {
 
+    // Messages stamped with a producer timestamp but no TTL are shed once
+    // they are older than this, unless a max age is given
+    static final long DEFAULT_MAX_MESSAGE_AGE_MILLIS = 30000;
+
+    // Stale messages are republished under this prefix in divert mode. It
+    // is outside the subscription, so they do not come back.
+    static final String STALE_TOPIC_PREFIX = "solace/samples/stale/";
+
+    // Stale messages waiting to be republished in divert mode; beyond this
+    // they are dropped
+    static final int DIVERT_QUEUE_CAPACITY = 10000;
+
+    // Duplicate filter sizing: about 1.8MB per filter generation, plus the
+    // per-publisher windows
+    static final int DEDUP_MAX_PUBLISHERS = 10000;
+    static final long DEDUP_FILTER_CAPACITY = 1000000;
+    static final double DEDUP_FALSE_POSITIVE_RATE = 0.001;
+
     public void run(String... args) {
         System.out.println("QoS1Consumer initializing...");
 
         String host = args[0];
         String username = args[1];
         String password = args[2];
+        // Dedup mode: drop redeliveries and retries of messages already handled,
+        // tracking this many sequence numbers exactly per publisher. Producers
+        // need to stamp their messages, as QoS1Producer does with a seq.
+        // The broker only redelivers to a persistent session (cleanSession
+        // false) that reconnects; this consumer uses a clean session and does
+        // not reconnect, so here duplicates come from producer retries.
+        int dedupWindow = -1;
+        if (args.length > 3) dedupWindow = Integer.parseInt(args[3]);
+        // Duplicates only show up over many messages, so in dedup mode the
+        // consumer keeps going until [ENTER] instead of stopping at the first
+        final boolean dedupMode = dedupWindow >= 0;
+        // Deadline shedding: age limit for messages with a timestamp but no
+        // TTL, and whether stale messages are dropped or diverted
+        long maxAgeMillis = DEFAULT_MAX_MESSAGE_AGE_MILLIS;
+        if (args.length > 4) maxAgeMillis = Long.parseLong(args[4]);
+        boolean divertStale = args.length > 5 && args[5].equalsIgnoreCase("divert");
 
         try {
             // Create an Mqtt client
@@ -47,6 +90,8 @@ public class QoS1Consumer {
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
 
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + host);
@@ -62,18 +107,22 @@ public class QoS1Consumer {
             final CountDownLatch latch = new CountDownLatch(1);
 
             // Callback - Anonymous inner-class for receiving messages
-            mqttClient.setCallback(new MqttCallback() {
+            MqttCallback handler = new MqttCallback() {
 
                 public void messageArrived(String topic, MqttMessage message) throws Exception {
                     // Called when a message arrives from the server that
                     // matches any subscription made by the client
                     String time = new Timestamp(System.currentTimeMillis()).toString();
+                    // Leave out the header line, if the producer stamped one
+                    byte[] payload = message.getPayload();
+                    PayloadHeader header = PayloadHeader.parse(payload);
+                    int bodyOffset = header == null ? 0 : header.getBodyOffset();
                     System.out.println("\nReceived a Message!" +
                             "\n\tTime:    " + time + 
                             "\n\tTopic:   " + topic + 
-                            "\n\tMessage: " + new String(message.getPayload()) + 
+                            "\n\tMessage: " + new String(payload, bodyOffset, payload.length - bodyOffset) + 
                             "\n\tQoS:     " + message.getQos() + "\n");
-                    latch.countDown(); // unblock main thread
+                    if (!dedupMode) latch.countDown(); // unblock main thread
                 }
 
                 public void connectionLost(Throwable cause) {
@@ -84,7 +133,29 @@ public class QoS1Consumer {
                 public void deliveryComplete(IMqttDeliveryToken token) {
                 }
 
-            });
+            };
+
+            // In dedup mode the handler sees each message only once
+            DuplicateFilter dedup = null;
+            if (dedupMode) {
+                dedup = new DuplicateFilter(handler, dedupWindow, DEDUP_MAX_PUBLISHERS,
+                        DEDUP_FILTER_CAPACITY, DEDUP_FALSE_POSITIVE_RATE);
+                handler = dedup;
+            }
+
+            // In divert mode stale messages are republished for later instead
+            // of being dropped. A backlog can be all stale, so they are queued
+            // and sent from another thread within the client's in-flight limit.
+            DivertPublisher divert = null;
+            if (divertStale) {
+                divert = new DivertPublisher(mqttClient, STALE_TOPIC_PREFIX, 1,
+                        DIVERT_QUEUE_CAPACITY, connOpts.getMaxInflight());
+                divert.start();
+            }
+
+            // Stage that sheds messages whose deadline has already passed
+            final DeadlineShedder shedder = new DeadlineShedder(handler, maxAgeMillis, divert);
+            mqttClient.setCallback(MqttFlightEvents.recordArrivals(shedder));
 
             // Topic filter the client will subscribe to
             final String subTopic = "Q/tutorial";
@@ -103,15 +174,40 @@ public class QoS1Consumer {
             }
             System.out.println("Subscribed with OoS level 1 and waiting to receive msgs");
 
-            // Wait for the message to be received
-            try {
-                latch.await(); // block here until message received, and latch will flip
-            } catch (InterruptedException e) {
-                System.out.println("I was awoken while waiting");
+            if (!dedupMode) {
+                // Wait for the message to be received
+                try {
+                    latch.await(); // block here until message received, and latch will flip
+                } catch (InterruptedException e) {
+                    System.out.println("I was awoken while waiting");
+                }
+            } else {
+                System.out.println("Consuming with duplicate filtering. Press [ENTER] to quit.");
+                try {
+                    while (System.in.available() == 0 && !latch.await(1, TimeUnit.SECONDS)) {
+                        // keep consuming until [ENTER] or the connection is lost
+                    }
+                } catch (InterruptedException e) {
+                    System.out.println("I was awoken while waiting");
+                } catch (IOException e) {
+                    // stdin unavailable, stop consuming
+                }
+            }
+
+            if (divert != null) {
+                try {
+                    divert.stop();
+                } catch (InterruptedException e) {
+                    System.out.println("I was awoken while waiting");
+                }
             }
 
             // Disconnect the client
             mqttClient.disconnect();
+            System.out.println("Messages " + shedder);
+            if (divert != null) System.out.println("Diverted " + divert);
+            if (dedup != null) System.out.println("Duplicates " + dedup);
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Exiting");
 
             System.exit(0);
@@ -126,8 +222,14 @@ public class QoS1Consumer {
 
     public static void main(String[] args) {
         // Check command line arguments
-        if (args.length != 3) {
-            System.out.println("Usage: QoS1Consumer tcp://<host:port> <client-username> <client-password>");
+        if (args.length < 3 || args.length > 6) {
+            System.out.println("Usage: QoS1Consumer <tcp|ssl>://<host:port> <client-username> <client-password> [dedup-window] [max-age-ms] [drop|divert]");
+            System.out.println("  dedup-window: drop messages already handled, by the pub/seq or id in their payload header,");
+            System.out.println("                remembering this many sequence numbers exactly per publisher (-1 = off).");
+            System.out.println("                With a clean session there are no redeliveries: duplicates are producer");
+            System.out.println("                retries, e.g. QoS1Producer run twice with the same seq");
+            System.out.println("  max-age-ms:   shed timestamped messages without a TTL once this old (0 = never, default " + DEFAULT_MAX_MESSAGE_AGE_MILLIS + ")");
+            System.out.println("  drop|divert:  drop stale messages, or republish them under " + STALE_TOPIC_PREFIX + " (default drop)");
             System.out.println();
             System.exit(-1);
         }
@@ -16,11 +16,18 @@
 
 package com.solace.samples;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.PayloadHeader;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt QoS1 message producer 
  *
@@ -33,14 +40,26 @@ public class QoS1Producer {
         String host = args[0];
         String username = args[1];
         String password = args[2];
+        // Stamp the message with a timestamp header and, if above 0, a TTL,
+        // so that consumers can shed it once it is stale
+        long ttlMillis = -1;
+        if (args.length > 3) ttlMillis = Long.parseLong(args[3]);
+        // Stamp the message with this client id and sequence number, so that a
+        // QoS1Consumer in dedup mode drops it if it was already handled. Sending
+        // the same number again is what a producer retrying after a failure does.
+        long sequence = -1;
+        if (args.length > 4) sequence = Long.parseLong(args[4]);
 
         try {
             // Create an Mqtt client
-            MqttClient mqttClient = new MqttClient(host, "HelloWorldQoS1Producer");
+            String clientId = "HelloWorldQoS1Producer";
+            MqttClient mqttClient = new MqttClient(host, clientId);
             MqttConnectOptions connOpts = new MqttConnectOptions();
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
 
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + host);
@@ -49,7 +68,18 @@ public class QoS1Producer {
 
             // Create a Mqtt message
             String content = "Hello world from MQTT!";
-            MqttMessage message = new MqttMessage(content.getBytes());
+            byte[] payload = content.getBytes();
+            Map<String, Object> header = new LinkedHashMap<String, Object>();
+            if (ttlMillis >= 0) {
+                header.put("ts", System.currentTimeMillis());
+                if (ttlMillis > 0) header.put("ttl", ttlMillis);
+            }
+            if (sequence >= 0) {
+                header.put("pub", clientId);
+                header.put("seq", sequence);
+            }
+            if (!header.isEmpty()) payload = PayloadHeader.stamp(header, payload);
+            MqttMessage message = new MqttMessage(payload);
             // Set the QoS on the Messages - 
             // Here we are using QoS of 1 (equivalent to Persistent Messages in Solace)
             message.setQos(1);
@@ -57,11 +87,12 @@ public class QoS1Producer {
             System.out.println("Publishing message: " + content);
 
             // Publish the message
-            mqttClient.publish("Q/tutorial", message);
+            MqttFlightEvents.publish(mqttClient, "Q/tutorial", message);
 
             // Disconnect the client
             mqttClient.disconnect();
 
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Message published. Exiting");
 
             System.exit(0);
@@ -76,8 +107,11 @@ public class QoS1Producer {
 
     public static void main(String[] args) {
         // Check command line arguments
-        if (args.length != 3) {
-            System.out.println("Usage: QoS1Producer tcp://<host:port> <client-username> <client-password>");
+        if (args.length < 3 || args.length > 5) {
+            System.out.println("Usage: QoS1Producer <tcp|ssl>://<host:port> <client-username> <client-password> [ttl-ms] [seq]");
+            System.out.println("  ttl-ms: stamp the message with a timestamp and this TTL (0 = timestamp only, -1 = off)");
+            System.out.println("  seq:    stamp the message with the client id and this sequence number, for a");
+            System.out.println("          QoS1Consumer in dedup mode (repeat a number to send a duplicate)");
             System.out.println();
             System.exit(-1);
         }
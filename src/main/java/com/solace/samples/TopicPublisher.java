@@ -17,6 +17,8 @@
 package com.solace.samples;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.eclipse.paho.client.mqttv3.MqttClient;
@@ -24,6 +26,10 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.PayloadHeader;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt topic publisher 
  *
@@ -39,6 +45,10 @@ public class TopicPublisher {
         String username = args[1];
         String password = "";
         if (args.length > 2) password = args[2];
+        // Stamp each message with a timestamp header and, if above 0, a TTL,
+        // so that subscribers can shed it once it is stale
+        long ttlMillis = -1;
+        if (args.length > 3) ttlMillis = Long.parseLong(args[3]);
 
         try {
             // Create an Mqtt client
@@ -47,6 +57,8 @@ public class TopicPublisher {
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             if (args.length > 2) connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
             
             // Connect the client
             System.out.println("Connecting to Solace messaging at " + host);
@@ -56,7 +68,14 @@ public class TopicPublisher {
             for (int i=0; i<100; i++) {
 	            // Create a Mqtt message
 	            String content = "Hello world from MQTT!";
-	            MqttMessage message = new MqttMessage(content.getBytes());
+	            byte[] payload = content.getBytes();
+	            if (ttlMillis >= 0) {
+	                Map<String, Object> header = new LinkedHashMap<String, Object>();
+	                header.put("ts", System.currentTimeMillis());
+	                if (ttlMillis > 0) header.put("ttl", ttlMillis);
+	                payload = PayloadHeader.stamp(header, payload);
+	            }
+	            MqttMessage message = new MqttMessage(payload);
 	            // Set the QoS on the Messages - 
 	            // Here we are using QoS of 0 (equivalent to Direct Messaging in Solace)
 	            message.setQos(0);
@@ -64,7 +83,7 @@ public class TopicPublisher {
 	            System.out.println("Publishing message: " + content);
 	            
 	            // Publish the message
-	            mqttClient.publish("solace/samples/mqtt/direct/pub", message);
+	            MqttFlightEvents.publish(mqttClient, "solace/samples/mqtt/direct/pub", message);
 	            try {
 	            	Thread.sleep(1000);
 	            } catch (InterruptedException e) {
@@ -75,6 +94,7 @@ public class TopicPublisher {
             // Disconnect the client
             mqttClient.disconnect();
             
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Messages published. Exiting");
 
             System.exit(0);
@@ -90,7 +110,8 @@ public class TopicPublisher {
     public static void main(String[] args) throws IOException {
         // Check command line arguments
         if (args.length < 2) {
-            System.out.println("Usage: topicPublisher tcp://<host:port> <client-username> [client-password]");
+            System.out.println("Usage: topicPublisher <tcp|ssl>://<host:port> <client-username> [client-password] [ttl-ms]");
+            System.out.println("  ttl-ms: stamp each message with a timestamp and this TTL (0 = timestamp only)");
             System.out.println();
             System.exit(-1);
         }
@@ -28,12 +28,26 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import com.solace.samples.features.DeadlineShedder;
+import com.solace.samples.features.LastValueConflator;
+import com.solace.samples.features.MqttFlightEvents;
+import com.solace.samples.features.PayloadHeader;
+import com.solace.samples.features.ResumingSSLSocketFactory;
+
 /**
  * A Mqtt topic subscriber
  *
  */
 public class TopicSubscriber {
 
+    // Messages stamped with a producer timestamp but no TTL are shed once
+    // they are older than this, unless a max age is given
+    static final long DEFAULT_MAX_MESSAGE_AGE_MILLIS = 30000;
+
+    // Stale messages are republished under this prefix in divert mode. It
+    // is outside the subscription, so they do not come back.
+    static final String STALE_TOPIC_PREFIX = "solace/samples/stale/";
+
     static boolean isShutdown = false;
 
     public void run(String... args) throws IOException {
@@ -43,14 +57,25 @@ public class TopicSubscriber {
         String username = args[1];
         String password = "";
         if (args.length > 2) password = args[2];
+        // Conflation mode: hand over only the latest message per topic, every
+        // tick or, with a tick of 0, whenever the handler is free
+        long conflateTickMillis = -1;
+        if (args.length > 3) conflateTickMillis = Long.parseLong(args[3]);
+        // Deadline shedding: age limit for messages with a timestamp but no
+        // TTL, and whether stale messages are dropped or diverted
+        long maxAgeMillis = DEFAULT_MAX_MESSAGE_AGE_MILLIS;
+        if (args.length > 4) maxAgeMillis = Long.parseLong(args[4]);
+        boolean divertStale = args.length > 5 && args[5].equalsIgnoreCase("divert");
 
         try {
             // Create an Mqtt client
-            MqttClient mqttClient = new MqttClient(host, "HelloWorldSub_" + UUID.randomUUID().toString().substring(0,8));
+            final MqttClient mqttClient = new MqttClient(host, "HelloWorldSub_" + UUID.randomUUID().toString().substring(0,8));
             MqttConnectOptions connOpts = new MqttConnectOptions();
             connOpts.setCleanSession(true);
             connOpts.setUserName(username);
             if (args.length > 2) connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
             
             // Connect the client
             System.out.println("Connecting to Solace messaging at "+host);
@@ -61,16 +86,20 @@ public class TopicSubscriber {
             final String subTopic = "solace/samples/+/direct/#";
             
             // Callback - Anonymous inner-class for receiving messages
-            mqttClient.setCallback(new MqttCallback() {
+            MqttCallback handler = new MqttCallback() {
 
                 public void messageArrived(String topic, MqttMessage message) throws Exception {
                     // Called when a message arrives from the server that
                     // matches any subscription made by the client
                     String time = new Timestamp(System.currentTimeMillis()).toString();
+                    // Leave out the header line, if the producer stamped one
+                    byte[] payload = message.getPayload();
+                    PayloadHeader header = PayloadHeader.parse(payload);
+                    int bodyOffset = header == null ? 0 : header.getBodyOffset();
                     System.out.println("\nReceived a Message!" +
                             "\n\tTime:    " + time + 
                             "\n\tTopic:   " + topic + 
-                            "\n\tMessage: " + new String(message.getPayload()) + 
+                            "\n\tMessage: " + new String(payload, bodyOffset, payload.length - bodyOffset) + 
                             "\n\tQoS:     " + message.getQos() + "\n");
                 }
 
@@ -82,7 +111,41 @@ public class TopicSubscriber {
                 public void deliveryComplete(IMqttDeliveryToken token) {
                 }
 
-            });
+            };
+
+            // In conflation mode the handler sees only the newest value of each topic
+            LastValueConflator conflator = null;
+            if (conflateTickMillis >= 0) {
+                conflator = new LastValueConflator(handler, conflateTickMillis);
+                conflator.start();
+                handler = conflator;
+            }
+
+            // In divert mode stale messages are republished for later instead
+            // of being dropped
+            MqttCallback divert = null;
+            if (divertStale) {
+                divert = new MqttCallback() {
+
+                    public void messageArrived(String topic, MqttMessage message) throws Exception {
+                        // Not mqttClient.publish(): that waits for completion, which
+                        // only this callback thread can deliver. MqttTopic.publish
+                        // returns once the message is sent.
+                        mqttClient.getTopic(STALE_TOPIC_PREFIX + topic).publish(message.getPayload(), 0, false);
+                    }
+
+                    public void connectionLost(Throwable cause) {
+                    }
+
+                    public void deliveryComplete(IMqttDeliveryToken token) {
+                    }
+
+                };
+            }
+
+            // Stage that sheds messages whose deadline has already passed
+            final DeadlineShedder shedder = new DeadlineShedder(handler, maxAgeMillis, divert);
+            mqttClient.setCallback(MqttFlightEvents.recordArrivals(shedder));
             
             // Subscribe client to the topic filter and a QoS level of 0
             System.out.println("Subscribing client to topic: " + subTopic);
@@ -95,12 +158,16 @@ public class TopicSubscriber {
                 while (System.in.available() == 0 && !isShutdown) {
                     Thread.sleep(1000);  // wait 1 second
                 }
+                if (conflator != null) conflator.stop();
             } catch (InterruptedException e) {
                 // Thread.sleep() interrupted... probably getting shut down
             }
             
             // Disconnect the client
             mqttClient.disconnect();
+            System.out.println("Messages " + shedder);
+            if (conflator != null) System.out.println("Conflation " + conflator);
+            ResumingSSLSocketFactory.report(host);
             System.out.println("Exiting");
 
             System.exit(0);
@@ -116,7 +183,10 @@ public class TopicSubscriber {
     public static void main(String[] args) throws IOException {
         // Check command line arguments
         if (args.length < 2) {
-            System.out.println("Usage: topicSubscriber tcp://<host:port> <client-username> [client-password]");
+            System.out.println("Usage: topicSubscriber <tcp|ssl>://<host:port> <client-username> [client-password] [conflate-tick-ms] [max-age-ms] [drop|divert]");
+            System.out.println("  conflate-tick-ms: pass on only the latest message per topic, once per tick (0 = whenever the handler is free, -1 = off)");
+            System.out.println("  max-age-ms:       shed timestamped messages without a TTL once this old (0 = never, default " + DEFAULT_MAX_MESSAGE_AGE_MILLIS + ")");
+            System.out.println("  drop|divert:      drop stale messages, or republish them under " + STALE_TOPIC_PREFIX + " (default drop)");
             System.out.println();
             System.exit(-1);
         }
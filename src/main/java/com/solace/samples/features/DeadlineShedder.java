@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * An MqttCallback stage that sheds stale messages before they reach the
+ * real handler.
+ *
+ * The deadline of a message comes from its {@link PayloadHeader}:
+ *  - "deadline" if present,
+ *  - otherwise "ts" plus "ttl",
+ *  - otherwise "ts" plus the configured maximum age.
+ *
+ * Messages past their deadline are passed to the divert callback if one is
+ * set (to log them, or republish them to a topic for later), and dropped
+ * otherwise. A message the divert callback throws on is dropped too: an
+ * exception out of messageArrived would make Paho close the connection.
+ * Messages without a header, or without a deadline, are always
+ * processed. Deadlines are compared with this host's clock, so producer
+ * and consumer clocks need to be roughly in sync.
+ *
+ * After an outage the backlog is mostly stale, and shedding it lets the
+ * handler get back to fresh data quickly instead of working through every
+ * old message first.
+ */
+public class DeadlineShedder implements MqttCallback {
+
+    private final MqttCallback delegate;
+    private final long maxAgeMillis;
+    private final MqttCallback divert;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong diverted = new AtomicLong();
+
+    /**
+     * @param delegate     the handler for messages still within their deadline
+     * @param maxAgeMillis age limit for messages that carry "ts" but no "ttl";
+     *                     0 means such messages never expire
+     * @param divert       handler for stale messages, or null to drop them
+     */
+    public DeadlineShedder(MqttCallback delegate, long maxAgeMillis, MqttCallback divert) {
+        this.delegate = delegate;
+        this.maxAgeMillis = maxAgeMillis;
+        this.divert = divert;
+    }
+
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        long deadline = deadlineOf(message.getPayload());
+        if (deadline != Long.MAX_VALUE && System.currentTimeMillis() > deadline) {
+            if (divert != null && divertQuietly(topic, message)) {
+                diverted.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        processed.incrementAndGet();
+        delegate.messageArrived(topic, message);
+    }
+
+    public void connectionLost(Throwable cause) {
+        delegate.connectionLost(cause);
+    }
+
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        delegate.deliveryComplete(token);
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getDivertedCount() {
+        return diverted.get();
+    }
+
+    public String toString() {
+        return "processed=" + processed.get() + " shed=" + (dropped.get() + diverted.get()) +
+                " (dropped=" + dropped.get() + " diverted=" + diverted.get() + ")";
+    }
+
+    private boolean divertQuietly(String topic, MqttMessage message) {
+        try {
+            divert.messageArrived(topic, message);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the deadline in epoch milliseconds, or Long.MAX_VALUE if the
+     * message has none.
+     */
+    private long deadlineOf(byte[] payload) {
+        PayloadHeader header = PayloadHeader.parse(payload);
+        if (header == null) return Long.MAX_VALUE;
+
+        long deadline = header.getLong("deadline", -1);
+        if (deadline >= 0) return deadline;
+
+        long timestamp = header.getLong("ts", -1);
+        if (timestamp < 0) return Long.MAX_VALUE;
+        long ttl = header.getLong("ttl", maxAgeMillis);
+        return ttl > 0 ? timestamp + ttl : Long.MAX_VALUE;
+    }
+}
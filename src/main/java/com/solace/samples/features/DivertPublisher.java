@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * A divert callback for {@link DeadlineShedder} that republishes stale
+ * messages under a topic prefix from its own thread.
+ *
+ * messageArrived runs on the Paho callback thread. That thread must not
+ * wait for a publish to complete, since only it can complete one, and it
+ * must not publish past the client's in-flight limit either: the publish
+ * then throws, and an exception out of messageArrived takes the connection
+ * down. So messageArrived only queues the message, and a publisher thread
+ * sends the queue with at most maxInflight publishes awaiting completion.
+ * When the queue is full, messageArrived throws and the shedder counts the
+ * message as dropped.
+ */
+public class DivertPublisher implements MqttCallback {
+
+    private final IMqttAsyncClient client;
+    private final String topicPrefix;
+    private final int qos;
+    private final ArrayBlockingQueue<Diverted> queue;
+    private final Semaphore inflight;
+    private volatile boolean running = false;
+    private Thread publisher;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param client        the client to republish with
+     * @param topicPrefix   prefix for the republished topics; keep it outside
+     *                      the subscription, or the messages come back
+     * @param qos           QoS of the republished messages
+     * @param queueCapacity messages waiting to be republished, beyond which
+     *                      stale messages are dropped
+     * @param maxInflight   publishes awaiting completion at once; at most the
+     *                      client's max inflight, less its other publishes
+     */
+    public DivertPublisher(IMqttAsyncClient client, String topicPrefix, int qos,
+            int queueCapacity, int maxInflight) {
+        this.client = client;
+        this.topicPrefix = topicPrefix;
+        this.qos = qos;
+        this.queue = new ArrayBlockingQueue<Diverted>(queueCapacity);
+        this.inflight = new Semaphore(maxInflight);
+    }
+
+    public synchronized void start() {
+        running = true;
+        publisher = new Thread(new Runnable() {
+            public void run() {
+                publishQueued();
+            }
+        }, "divert-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Stops the publisher thread. Messages still queued are not republished.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (publisher != null) {
+            publisher.interrupt();
+            publisher.join();
+        }
+    }
+
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        if (!queue.offer(new Diverted(topicPrefix + topic, message.getPayload()))) {
+            throw new IllegalStateException("divert queue full");
+        }
+    }
+
+    public void connectionLost(Throwable cause) {
+    }
+
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public String toString() {
+        return "published=" + published.get() + " failed=" + failed.get() +
+                " unsent=" + queue.size();
+    }
+
+    private void publishQueued() {
+        IMqttActionListener listener = new IMqttActionListener() {
+            public void onSuccess(IMqttToken token) {
+                published.incrementAndGet();
+                inflight.release();
+            }
+
+            public void onFailure(IMqttToken token, Throwable cause) {
+                failed.incrementAndGet();
+                inflight.release();
+            }
+        };
+        while (running) {
+            Diverted diverted;
+            try {
+                diverted = queue.poll(1, TimeUnit.SECONDS);
+                if (diverted == null) continue;
+                inflight.acquire();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                client.publish(diverted.topic, diverted.payload, qos, false, null, listener);
+            } catch (MqttException e) {
+                failed.incrementAndGet();
+                inflight.release();
+            }
+        }
+    }
+
+    private static final class Diverted {
+        final String topic;
+        final byte[] payload;
+
+        Diverted(String topic, byte[] payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.LinkedHashMap;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * An MqttCallback stage that drops messages the handler has already seen,
+ * such as QoS 1 redeliveries and producer retries, using bounded memory.
+ *
+ * Messages are identified by their {@link PayloadHeader}:
+ *  - "pub" and "seq": a publisher id and its increasing sequence number
+ *  - otherwise "id": a unique message id
+ * Messages with neither are passed on as they are.
+ *
+ * Each publisher has an exact sliding window over its most recent
+ * sequence numbers. Every accepted key, including plain ids, also goes
+ * into a Bloom filter, which answers for sequence numbers that are older
+ * than the window and for messages with only an id. The filter has two
+ * generations: when the current one is full it becomes the old one and
+ * the previous old one is discarded, so ids are remembered for between
+ * one and two filter capacities. A false positive drops a new message as
+ * a duplicate, so the estimated false-positive rate is reported along
+ * with the memory used and the duplicates dropped.
+ *
+ * A message is only marked as seen once the handler returns normally. If
+ * the handler throws, Paho does not acknowledge the message and its
+ * redelivery is passed to the handler again.
+ */
+public class DuplicateFilter implements MqttCallback {
+
+    // Rough cost of a publisher entry: map entry, key String and window object
+    static final int PUBLISHER_OVERHEAD_BYTES = 128;
+
+    private final MqttCallback delegate;
+    private final int windowSize;
+    private final int maxPublishers;
+    private final long filterCapacity;
+    private final int filterBits;
+    private final int filterHashes;
+
+    private final LinkedHashMap<String, SequenceWindow> windows;
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    private long processed = 0;
+    private long unkeyed = 0;
+    private long droppedByWindow = 0;
+    private long droppedByFilter = 0;
+    private long redeliveries = 0;
+    private long filterRotations = 0;
+
+    /**
+     * @param delegate          the handler for messages not seen before
+     * @param windowSize        sequence numbers tracked exactly per publisher,
+     *                          rounded up to a multiple of 64
+     * @param maxPublishers     publishers with a window; the least recently
+     *                          active one loses its window beyond this
+     * @param filterCapacity    keys per filter generation
+     * @param falsePositiveRate target false-positive rate of a full generation
+     */
+    public DuplicateFilter(MqttCallback delegate, int windowSize, int maxPublishers,
+            long filterCapacity, double falsePositiveRate) {
+        this.delegate = delegate;
+        this.windowSize = Math.max(64, (windowSize + 63) / 64 * 64);
+        this.maxPublishers = maxPublishers;
+        this.filterCapacity = filterCapacity;
+        // Standard Bloom filter sizing: m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+        long bits = (long) Math.ceil(-filterCapacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.filterBits = (int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+        this.filterHashes = Math.max(1, (int) Math.round((double) filterBits / filterCapacity * Math.log(2)));
+        this.windows = new LinkedHashMap<String, SequenceWindow>(16, 0.75f, true);
+        this.current = new BloomFilter(filterBits, filterHashes);
+    }
+
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        PayloadHeader header = PayloadHeader.parse(message.getPayload());
+        String publisher = null;
+        long sequence = -1;
+        String id = null;
+        if (header != null) {
+            sequence = header.getLong("seq", -1);
+            if (sequence >= 0) publisher = header.get("pub");
+            id = header.get("id");
+        }
+        if (publisher == null && id == null) {
+            synchronized (this) {
+                unkeyed++;
+            }
+            delegate.messageArrived(topic, message);
+            return;
+        }
+
+        String key = publisher != null ? publisher + '#' + sequence : id;
+        synchronized (this) {
+            if (message.isDuplicate()) redeliveries++;
+            if (isSeen(publisher, sequence, key)) return;
+        }
+        delegate.messageArrived(topic, message);
+        synchronized (this) {
+            markSeen(publisher, sequence, key);
+            processed++;
+        }
+    }
+
+    public void connectionLost(Throwable cause) {
+        delegate.connectionLost(cause);
+    }
+
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        delegate.deliveryComplete(token);
+    }
+
+    public synchronized long getProcessedCount() {
+        return processed;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedByWindow + droppedByFilter;
+    }
+
+    /**
+     * Estimated chance that a new key is taken for a duplicate by the filter,
+     * given how full both generations are now.
+     */
+    public synchronized double getFalsePositiveRate() {
+        double notCurrent = 1 - current.getFalsePositiveRate();
+        double notPrevious = previous == null ? 1 : 1 - previous.getFalsePositiveRate();
+        return 1 - notCurrent * notPrevious;
+    }
+
+    /**
+     * Approximate heap used by the windows and the filter generations.
+     */
+    public synchronized long getMemoryBytes() {
+        long bytes = current.getMemoryBytes() + (previous == null ? 0 : previous.getMemoryBytes());
+        for (String publisher : windows.keySet()) {
+            bytes += PUBLISHER_OVERHEAD_BYTES + 2L * publisher.length() + windowSize / 8;
+        }
+        return bytes;
+    }
+
+    public synchronized String toString() {
+        return "processed=" + processed + " dropped=" + (droppedByWindow + droppedByFilter) +
+                " (window=" + droppedByWindow + " filter=" + droppedByFilter + ")" +
+                " unkeyed=" + unkeyed + " redeliveries=" + redeliveries +
+                " publishers=" + windows.size() + " filterRotations=" + filterRotations +
+                String.format(" falsePositiveRate=%.2e", getFalsePositiveRate()) +
+                " memoryBytes=" + getMemoryBytes();
+    }
+
+    private boolean isSeen(String publisher, long sequence, String key) {
+        if (publisher != null) {
+            SequenceWindow window = windows.get(publisher);
+            if (window != null && window.covers(sequence)) {
+                if (window.contains(sequence)) {
+                    droppedByWindow++;
+                    return true;
+                }
+                // Inside the window and not seen: exact answer, no filter lookup
+                return false;
+            }
+        }
+        if (current.mightContain(key) || (previous != null && previous.mightContain(key))) {
+            droppedByFilter++;
+            return true;
+        }
+        return false;
+    }
+
+    private void markSeen(String publisher, long sequence, String key) {
+        if (publisher != null) {
+            SequenceWindow window = windows.get(publisher);
+            if (window == null) {
+                window = new SequenceWindow(windowSize);
+                windows.put(publisher, window);
+                if (windows.size() > maxPublishers) {
+                    // The evicted publisher's keys are still in the filter
+                    windows.remove(windows.keySet().iterator().next());
+                }
+            }
+            window.add(sequence);
+        }
+        if (current.getCount() >= filterCapacity) {
+            previous = current;
+            current = new BloomFilter(filterBits, filterHashes);
+            filterRotations++;
+        }
+        current.add(key);
+    }
+
+    /**
+     * The sequence numbers seen from one publisher, exactly, for the last
+     * windowSize numbers up to the highest one seen.
+     */
+    static class SequenceWindow {
+        private final long[] bits;
+        private final int size;
+        private long highest = -1;
+
+        SequenceWindow(int size) {
+            this.size = size;
+            this.bits = new long[size / 64];
+        }
+
+        boolean covers(long sequence) {
+            return highest >= 0 && sequence > highest - size;
+        }
+
+        boolean contains(long sequence) {
+            if (sequence > highest) return false;
+            int slot = (int) (sequence % size);
+            return (bits[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        void add(long sequence) {
+            if (sequence > highest) {
+                // Clear the slots of the numbers that slide out of the window
+                long clearFrom = Math.max(highest + 1, sequence - size + 1);
+                for (long s = clearFrom; s <= sequence; s++) {
+                    int slot = (int) (s % size);
+                    bits[slot >>> 6] &= ~(1L << slot);
+                }
+                highest = sequence;
+            } else if (!covers(sequence)) {
+                return;
+            }
+            int slot = (int) (sequence % size);
+            bits[slot >>> 6] |= 1L << slot;
+        }
+    }
+
+    /**
+     * A fixed size Bloom filter over String keys, using double hashing of a
+     * 64-bit hash to pick the bits.
+     */
+    static class BloomFilter {
+        private final long[] bits;
+        private final int bitCount;
+        private final int hashes;
+        private long count = 0;
+
+        BloomFilter(int bitCount, int hashes) {
+            this.bits = new long[(bitCount + 63) / 64];
+            this.bitCount = bitCount;
+            this.hashes = hashes;
+        }
+
+        void add(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                bits[bit >>> 6] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * (1 - e^(-kn/m))^k for the n keys added so far.
+         */
+        double getFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * count / bitCount), hashes);
+        }
+
+        long getMemoryBytes() {
+            return 8L * bits.length;
+        }
+
+        // FNV-1a over the chars, then the MurmurHash3 finalizer to spread the bits
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
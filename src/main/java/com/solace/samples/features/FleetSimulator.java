@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a fleet of devices, each with its own Mqtt connection, to see
+ * how the client and the broker cope as the number of connections grows.
+ *
+ * A Paho MqttClient runs several threads per connection, which limits one
+ * JVM to a few thousand clients. Here every device is a
+ * {@link SimulatedDevice} on a single shared event loop: one thread and
+ * one selector drive all the sockets, and a device costs little more than
+ * its socket and buffers.
+ *
+ * Each device connects, subscribes to its own topic and then publishes a
+ * timestamped message to it on a fixed interval, starting at a random
+ * point so the fleet's traffic is spread out. The fleet grows in steps and
+ * for each step the simulator reports:
+ *  - the connect rate, from starting the step to the last SUBACK
+ *  - the connect time p99, from opening the socket to the SUBACK
+ *  - the devices connected now, and how many the broker has dropped after
+ *    they connected
+ *  - the heap used per connection (kernel socket buffers not included)
+ *  - the live thread count, which stays flat as the fleet grows
+ *  - the publish-to-receive latency through the broker, over one interval
+ *
+ * Only tcp:// is supported.
+ */
+public class FleetSimulator implements SimulatedDevice.Listener {
+
+    static final int DEFAULT_MAX_DEVICES = 10000;
+    static final int DEFAULT_STEP = 1000;
+    static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 5000;
+    static final int PAYLOAD_SIZE = 64;
+    // Connects in flight at once. Beyond this, the broker's accept backlog
+    // rather than the fleet sets the connect rate, and SYNs start to drop.
+    static final int MAX_PENDING_CONNECTS = 200;
+    // Same as the Paho default connection timeout
+    static final long CONNECT_TIMEOUT_MILLIS = 30000;
+    static final long STEP_TIMEOUT_MILLIS = 60000;
+    static final int MAX_REPORTED_FAILURES = 10;
+
+    private final InetSocketAddress address;
+    private final String username;
+    private final String password;
+    private final long publishIntervalNanos;
+    private final int keepAliveSeconds;
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean running = true;
+
+    // Event loop thread only
+    private final List<SimulatedDevice> devices = new ArrayList<SimulatedDevice>();
+    private final ArrayDeque<SimulatedDevice> toOpen = new ArrayDeque<SimulatedDevice>();
+    // Devices in the order they were opened, until they are connected
+    private final ArrayDeque<SimulatedDevice> connecting = new ArrayDeque<SimulatedDevice>();
+    private final PriorityQueue<SimulatedDevice> schedule = new PriorityQueue<SimulatedDevice>(
+            new Comparator<SimulatedDevice>() {
+                public int compare(SimulatedDevice a, SimulatedDevice b) {
+                    return Long.compare(a.nextActionNanos, b.nextActionNanos);
+                }
+            });
+    private final byte[] payload = new byte[PAYLOAD_SIZE];
+    private int pendingConnects = 0;
+
+    private final AtomicInteger ready = new AtomicInteger();
+    // Devices that never got connected, and connected devices lost later
+    private final AtomicInteger connectFailed = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger reportedFailures = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private volatile long lastReadyNanos;
+    private final LatencyStats connectStats = new LatencyStats();
+    private final LatencyStats latencyStats = new LatencyStats();
+
+    public FleetSimulator(InetSocketAddress address, String username, String password,
+            long publishIntervalMillis) throws IOException {
+        this.address = address;
+        this.username = username;
+        this.password = password;
+        this.publishIntervalNanos = publishIntervalMillis * 1000000L;
+        // The broker drops a client after 1.5 keep alive periods of silence
+        this.keepAliveSeconds = (int) Math.max(60, 2 * publishIntervalMillis / 1000);
+        this.selector = Selector.open();
+    }
+
+    public void run(int maxDevices, int step) throws InterruptedException {
+        Thread loop = new Thread(new Runnable() {
+            public void run() {
+                eventLoop();
+            }
+        }, "fleet-event-loop");
+        loop.start();
+
+        long measureMillis = Math.max(1000, publishIntervalNanos / 1000000L);
+        System.out.println(String.format("%n%9s %8s %10s %12s %10s %8s %8s %10s %10s %10s",
+                "connected", "dropped", "connect/s", "connect p99", "heap/conn", "threads",
+                "msgs", "lat p50", "lat p99", "lat max"));
+
+        int opened = 0;
+        while (opened < maxDevices) {
+            final int count = Math.min(step, maxDevices - opened);
+            final int firstIndex = opened;
+            opened += count;
+
+            long heapBefore = usedHeap();
+            int readyBefore = ready.get();
+            connectStats.reset();
+            long stepStart = System.nanoTime();
+            submit(new Runnable() {
+                public void run() {
+                    for (int i = firstIndex; i < firstIndex + count; i++) {
+                        String clientId = "fleet-" + runId + "-" + i;
+                        toOpen.add(new SimulatedDevice(clientId, "solace/samples/fleet/" + clientId + "/telemetry",
+                                username, password, keepAliveSeconds, FleetSimulator.this));
+                    }
+                }
+            });
+
+            // Wait for every device of the step to be connected or to fail
+            // connecting. Drops of connected devices do not count here.
+            long deadline = stepStart + STEP_TIMEOUT_MILLIS * 1000000L;
+            while (ready.get() + connectFailed.get() < opened && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            int newlyReady = ready.get() - readyBefore;
+            double connectsPerSecond = newlyReady == 0 ? 0 : newlyReady / ((lastReadyNanos - stepStart) / 1e9);
+            long heapPerConnection = newlyReady == 0 ? 0 : (usedHeap() - heapBefore) / newlyReady;
+
+            // Latency over one publish interval with the whole fleet running
+            latencyStats.reset();
+            received.set(0);
+            if (publishIntervalNanos > 0) Thread.sleep(measureMillis);
+
+            System.out.println(String.format("%9d %8d %10.0f %10.1fms %8.1fKB %8d %8d %8dus %8dus %8dus",
+                    ready.get() - dropped.get(), dropped.get(), connectsPerSecond, connectStats.getPercentileMicros(99) / 1000.0,
+                    heapPerConnection / 1024.0, Thread.activeCount(), received.get(),
+                    latencyStats.getPercentileMicros(50), latencyStats.getPercentileMicros(99),
+                    latencyStats.getMaxMicros()));
+
+            if (ready.get() + connectFailed.get() < opened) {
+                System.out.println("Timed out waiting for connections, stopping the ramp");
+                break;
+            }
+            if (newlyReady == 0) {
+                System.out.println("No device of this step connected, stopping the ramp");
+                break;
+            }
+        }
+        if (connectFailed.get() > 0) System.out.println("\n" + connectFailed.get() + " devices failed to connect");
+        if (dropped.get() > 0) System.out.println(dropped.get() + " devices were dropped after connecting");
+
+        // Disconnect the fleet and stop the loop
+        submit(new Runnable() {
+            public void run() {
+                for (SimulatedDevice device : devices) device.close();
+                running = false;
+            }
+        });
+        loop.join();
+    }
+
+    public void ready(SimulatedDevice device) {
+        long now = System.nanoTime();
+        pendingConnects--;
+        connectStats.record(now - device.openNanos);
+        ready.incrementAndGet();
+        lastReadyNanos = now;
+        if (publishIntervalNanos > 0) {
+            // Random first publish so the fleet does not publish in lockstep
+            device.nextActionNanos = now + ThreadLocalRandom.current().nextLong(publishIntervalNanos);
+        } else {
+            device.nextActionNanos = now + keepAliveSeconds * 500000000L;
+        }
+        schedule.add(device);
+    }
+
+    public void received(SimulatedDevice device, ByteBuffer message) {
+        if (message.remaining() < 8) return;
+        latencyStats.record(System.nanoTime() - message.getLong(0));
+        received.incrementAndGet();
+    }
+
+    public void failed(SimulatedDevice device, SimulatedDevice.State stateAtFailure, String reason) {
+        if (stateAtFailure == SimulatedDevice.State.ACTIVE) {
+            dropped.incrementAndGet();
+        } else {
+            pendingConnects--;
+            connectFailed.incrementAndGet();
+        }
+        if (reportedFailures.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+            System.out.println(device.getClientId() + " failed in " + stateAtFailure + ": " + reason);
+        }
+    }
+
+    private void submit(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void eventLoop() {
+        try {
+            while (running) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                openPending();
+                long timeoutMillis = runDue();
+
+                selector.select(timeoutMillis);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid()) ((SimulatedDevice) key.attachment()).handle();
+                }
+                selector.selectedKeys().clear();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.out.println("Event loop failed: " + e);
+        }
+    }
+
+    private void openPending() {
+        while (!toOpen.isEmpty() && pendingConnects < MAX_PENDING_CONNECTS) {
+            SimulatedDevice device = toOpen.poll();
+            devices.add(device);
+            connecting.add(device);
+            pendingConnects++;
+            try {
+                device.open(selector, address);
+            } catch (IOException e) {
+                // Typically the open file limit; see ulimit -n
+                device.fail(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Fails connects that have taken too long, publishes (or pings) for
+     * every device that is due, and returns how long the loop can wait for
+     * the next one.
+     */
+    private long runDue() {
+        long now = System.nanoTime();
+        while (!connecting.isEmpty()) {
+            SimulatedDevice device = connecting.peek();
+            SimulatedDevice.State state = device.getState();
+            if (state == SimulatedDevice.State.ACTIVE || state == SimulatedDevice.State.CLOSED) {
+                connecting.poll();
+            } else if (now - device.openNanos > CONNECT_TIMEOUT_MILLIS * 1000000L) {
+                connecting.poll();
+                device.fail("no reply within " + CONNECT_TIMEOUT_MILLIS + "ms");
+            } else {
+                break;
+            }
+        }
+        while (!schedule.isEmpty() && schedule.peek().nextActionNanos <= now) {
+            SimulatedDevice device = schedule.poll();
+            if (device.getState() != SimulatedDevice.State.ACTIVE) continue;
+            if (publishIntervalNanos > 0) {
+                ByteBuffer.wrap(payload).putLong(0, System.nanoTime());
+                device.publish(payload);
+                device.nextActionNanos += publishIntervalNanos;
+            } else {
+                device.ping();
+                device.nextActionNanos += keepAliveSeconds * 500000000L;
+            }
+            schedule.add(device);
+        }
+        if (schedule.isEmpty()) return 100;
+        return Math.min(100, Math.max(1, (schedule.peek().nextActionNanos - now) / 1000000L));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        Thread.sleep(100);
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Check command line arguments
+        if (args.length < 3) {
+            System.out.println("Usage: fleetSimulator tcp://<host:port> <client-username> <client-password> [max-devices] [step] [publish-interval-ms]");
+            System.out.println("  max-devices:         devices to simulate in total (default " + DEFAULT_MAX_DEVICES + ")");
+            System.out.println("  step:                devices added per step (default " + DEFAULT_STEP + ")");
+            System.out.println("  publish-interval-ms: time between each device's publishes, 0 to only keep alive (default " + DEFAULT_PUBLISH_INTERVAL_MILLIS + ")");
+            System.out.println();
+            System.exit(-1);
+        }
+        System.out.println("FleetSimulator initializing...");
+
+        URI uri;
+        try {
+            uri = new URI(args[0]);
+        } catch (URISyntaxException e) {
+            uri = null;
+        }
+        if (uri == null || !"tcp".equals(uri.getScheme()) || uri.getHost() == null) {
+            System.out.println("Only tcp://<host:port> URLs are supported: " + args[0]);
+            System.exit(-1);
+        }
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 1883 : uri.getPort());
+
+        int maxDevices = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_DEVICES;
+        int step = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_STEP;
+        long publishIntervalMillis = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_PUBLISH_INTERVAL_MILLIS;
+
+        System.out.println("Simulating up to " + maxDevices + " devices against " + address +
+                ", adding " + step + " per step");
+        new FleetSimulator(address, args[1], args[2], publishIntervalMillis).run(maxDevices, step);
+        System.out.println("Exiting");
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * An Mqtt client that keeps latency-critical traffic and bulk data on
+ * separate connections.
+ *
+ * Each publish names the lane it belongs to. Control traffic (request/reply,
+ * handshakes such as $SYS/client/reply-to) goes over its own connection, so
+ * a small reply never queues behind a large bulk payload on the same socket.
+ * The time from publish until Paho reports the message written (QoS 0) or
+ * acknowledged (QoS 1) is tracked per lane.
+ *
+ * Passing separateConnections=false puts both lanes on one connection, which
+ * is useful to compare the two set-ups with the same code.
+ */
+public class LaneClient {
+
+    public enum Lane { CONTROL, BULK }
+
+    private final MqttAsyncClient[] clients = new MqttAsyncClient[Lane.values().length];
+    private final LatencyStats[] stats = new LatencyStats[Lane.values().length];
+
+    public LaneClient(String host, String clientIdPrefix, boolean separateConnections) throws MqttException {
+        clients[Lane.CONTROL.ordinal()] = new MqttAsyncClient(host, clientIdPrefix + "_ctl");
+        clients[Lane.BULK.ordinal()] = separateConnections
+                ? new MqttAsyncClient(host, clientIdPrefix + "_bulk")
+                : clients[Lane.CONTROL.ordinal()];
+        for (Lane lane : Lane.values()) {
+            stats[lane.ordinal()] = new LatencyStats();
+        }
+    }
+
+    public boolean isSeparate() {
+        return clients[Lane.CONTROL.ordinal()] != clients[Lane.BULK.ordinal()];
+    }
+
+    public MqttAsyncClient getClient(Lane lane) {
+        return clients[lane.ordinal()];
+    }
+
+    public LatencyStats getStats(Lane lane) {
+        return stats[lane.ordinal()];
+    }
+
+    /**
+     * Sets the callback on every connection. The topic passed to
+     * messageArrived tells the lanes apart.
+     */
+    public void setCallback(MqttCallback callback) {
+        getClient(Lane.CONTROL).setCallback(callback);
+        if (isSeparate()) getClient(Lane.BULK).setCallback(callback);
+    }
+
+    public void connect(MqttConnectOptions connOpts, long timeoutMillis) throws MqttException {
+        IMqttToken controlToken = getClient(Lane.CONTROL).connect(connOpts);
+        IMqttToken bulkToken = isSeparate() ? getClient(Lane.BULK).connect(connOpts) : controlToken;
+        controlToken.waitForCompletion(timeoutMillis);
+        bulkToken.waitForCompletion(timeoutMillis);
+    }
+
+    public void subscribe(String topicFilter, int qos, Lane lane, long timeoutMillis) throws MqttException {
+        getClient(lane).subscribe(topicFilter, qos).waitForCompletion(timeoutMillis);
+    }
+
+    /**
+     * Publishes on the connection for the given lane without blocking, and
+     * records the completion latency against that lane.
+     */
+    public IMqttDeliveryToken publish(final String topic, MqttMessage message, Lane lane) throws MqttException {
+        final LatencyStats laneStats = getStats(lane);
+        final long start = System.nanoTime();
+        return MqttFlightEvents.publish(getClient(lane), topic, message, null, new IMqttActionListener() {
+
+            public void onSuccess(IMqttToken asyncActionToken) {
+                laneStats.record(System.nanoTime() - start);
+            }
+
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                System.out.println("Publish to " + topic + " failed: " + exception);
+            }
+        });
+    }
+
+    public void disconnect() throws MqttException {
+        getClient(Lane.CONTROL).disconnect().waitForCompletion();
+        if (isSeparate()) getClient(Lane.BULK).disconnect().waitForCompletion();
+    }
+}
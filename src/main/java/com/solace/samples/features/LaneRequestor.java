@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A Mqtt requestor that sends requests on a control connection while bulk
+ * data is being published on a separate connection
+ *
+ * Requests go to the same topic as BasicRequestor, so run BasicReplier or
+ * another replier on T/GettingStarted/request to get replies. Pass "single"
+ * as the last argument to put both lanes on one connection and compare.
+ *
+ */
+public class LaneRequestor {
+
+    // A unique Reply-To Topic for the client is obtained from Solace
+    private volatile String replyToTopic = "";
+
+    // Set by the main thread to stop the bulk publisher
+    private volatile boolean stopBulk = false;
+
+    static final int REQUEST_COUNT = 20;
+    static final int BULK_PAYLOAD_SIZE = 256 * 1024;
+    // Number of bulk messages allowed in flight before the bulk thread waits
+    static final int BULK_WINDOW = 8;
+
+    public void run(String... args) {
+        System.out.println("LaneRequestor initializing...");
+
+        String host = args[0];
+        String username = args[1];
+        String password = args[2];
+        boolean separate = !(args.length > 3 && args[3].equalsIgnoreCase("single"));
+
+        try {
+            // Create the lane-aware client: one connection per lane unless "single" was given
+            final LaneClient laneClient = new LaneClient(host, "HelloWorldLaneRequestor", separate);
+            MqttConnectOptions connOpts = new MqttConnectOptions();
+            connOpts.setCleanSession(true);
+            connOpts.setUserName(username);
+            connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
+
+            // Semaphore used for synchronizing b/w threads
+            final Semaphore latch = new Semaphore(0);
+
+            // Send time of each outstanding request, keyed by correlation id
+            final Map<String, Long> pending = new ConcurrentHashMap<String, Long>();
+            final LatencyStats roundTrips = new LatencyStats();
+
+            // Topics the client will use for requests and bulk data
+            final String requestTopic = "T/GettingStarted/request";
+            final String bulkTopic = "solace/samples/mqtt/bulk";
+
+            // Callback - Anonymous inner-class for the Reply-To topic and replies
+            laneClient.setCallback(MqttFlightEvents.recordArrivals(new MqttCallback() {
+                public void messageArrived(String topic, MqttMessage message) throws Exception {
+                    if (topic.equals("$SYS/client/reply-to")) {
+                        replyToTopic = new String(message.getPayload());
+                        System.out.println("\nReceived Reply-to topic from Solace for the MQTT client:" +
+                            "\n\tReply-To: " + replyToTopic + "\n");
+                        latch.release();
+                    } else if (topic.equals(replyToTopic)) {
+                        try {
+                            JSONObject jsonPayload = new JSONObject(new String(message.getPayload()));
+                            Long sent = pending.remove((String) jsonPayload.get("correlationId"));
+                            if (sent != null) {
+                                roundTrips.record(System.nanoTime() - sent);
+                                latch.release();
+                            }
+                        } catch (JSONException ex) {
+                            System.out.println("Exception parsing response message!");
+                            ex.printStackTrace();
+                        }
+                    }
+                }
+
+                public void connectionLost(Throwable cause) {
+                    System.out.println("Connection to Solace messaging lost!" + cause.getMessage());
+                    latch.release();
+                }
+
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+            }));
+
+            // Connect the client
+            System.out.println("Connecting to Solace messaging at " + host +
+                    (separate ? " with separate control and bulk connections" : " with a single connection"));
+            laneClient.connect(connOpts, 10000);
+            System.out.println("Connected");
+
+            // The Reply-To topic belongs to the connection that asks for it, so
+            // both the handshake and the replies use the control lane
+            System.out.println("Requesting Reply-To topic from Solace...");
+            laneClient.subscribe("$SYS/client/reply-to", 0, LaneClient.Lane.CONTROL, 10000);
+            latch.tryAcquire(10, TimeUnit.SECONDS);
+            if (replyToTopic == null || replyToTopic.isEmpty()) {
+                System.out.println("Unable to request Reply-To from Solace. Exiting");
+                System.exit(0);
+            }
+            laneClient.subscribe(replyToTopic, 0, LaneClient.Lane.CONTROL, 10000);
+
+            // Publish bulk data continuously on the bulk lane in the background
+            Thread bulkThread = new Thread(new Runnable() {
+                public void run() {
+                    ArrayDeque<IMqttDeliveryToken> inFlight = new ArrayDeque<IMqttDeliveryToken>();
+                    byte[] payload = new byte[BULK_PAYLOAD_SIZE];
+                    try {
+                        while (!stopBulk) {
+                            MqttMessage bulkMessage = new MqttMessage(payload);
+                            bulkMessage.setQos(0);
+                            inFlight.add(laneClient.publish(bulkTopic, bulkMessage, LaneClient.Lane.BULK));
+                            if (inFlight.size() >= BULK_WINDOW) inFlight.poll().waitForCompletion();
+                        }
+                    } catch (MqttException me) {
+                        System.out.println("Bulk publishing stopped: " + me);
+                    }
+                }
+            }, "bulk-publisher");
+            bulkThread.start();
+
+            // Send requests on the control lane while the bulk data flows
+            System.out.println("Sending " + REQUEST_COUNT + " requests to: " + requestTopic);
+            int answered = 0;
+            for (int i = 0; i < REQUEST_COUNT; i++) {
+                String correlationId = UUID.randomUUID().toString();
+                JSONObject obj = new JSONObject();
+                obj.put("correlationId", correlationId);
+                obj.put("replyTo", replyToTopic);
+                obj.put("message", "Sample Request");
+
+                MqttMessage reqMessage = new MqttMessage(obj.toString().getBytes());
+                reqMessage.setQos(0);
+                pending.put(correlationId, System.nanoTime());
+                laneClient.publish(requestTopic, reqMessage, LaneClient.Lane.CONTROL);
+
+                // Wait a bounded time for the reply before sending the next request
+                if (latch.tryAcquire(2, TimeUnit.SECONDS)) answered++;
+                else pending.remove(correlationId);
+                Thread.sleep(250);
+            }
+
+            stopBulk = true;
+            bulkThread.join();
+
+            System.out.println("\nResults (" + (separate ? "separate connections" : "single connection") + "):" +
+                    "\n\tControl lane publish: " + laneClient.getStats(LaneClient.Lane.CONTROL) +
+                    "\n\tBulk lane publish:    " + laneClient.getStats(LaneClient.Lane.BULK) +
+                    "\n\tRequest/reply RTT:    " + roundTrips +
+                    "\n\tReplies received:     " + answered + "/" + REQUEST_COUNT + "\n");
+
+            // Disconnect the client
+            laneClient.disconnect();
+            ResumingSSLSocketFactory.report(host);
+            System.out.println("Exiting");
+
+            System.exit(0);
+        } catch (MqttException me) {
+            System.out.println("Exception:   " + me);
+            System.out.println("Reason Code: " + me.getReasonCode());
+            System.out.println("Message:     " + me.getMessage());
+            if (me.getCause() != null) System.out.println("Cause:       " + me.getCause());
+            me.printStackTrace();
+        } catch (InterruptedException e) {
+            System.out.println("I was awoken while waiting");
+        }
+    }
+
+    public static void main(String[] args) {
+        // Check command line arguments
+        if (args.length < 3) {
+            System.out.println("Usage: laneRequestor <tcp|ssl>://<host:port> <client-username> <client-password> [lanes|single]");
+            System.out.println();
+            System.exit(-1);
+        }
+
+        new LaneRequestor().run(args);
+    }
+}
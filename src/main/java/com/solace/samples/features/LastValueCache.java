@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of the last payload published on each topic, bounded
+ * by an approximate memory size.
+ *
+ * Entries are kept in order of last update. When the cache goes over its
+ * limit, the topics that have gone longest without an update are evicted
+ * first, on the basis that they are the least likely to still be current.
+ */
+public class LastValueCache {
+
+    // Rough per-entry cost of the map entry, key String and array headers
+    static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+    private long bytes = 0;
+    private long evictions = 0;
+
+    public LastValueCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void put(String topic, byte[] payload) {
+        byte[] previous = entries.remove(topic);
+        if (previous != null) bytes -= sizeOf(topic, previous);
+        // Re-inserting moves the topic to the most recently updated end
+        entries.put(topic, payload);
+        bytes += sizeOf(topic, payload);
+
+        Iterator<Map.Entry<String, byte[]>> oldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, byte[]> entry = oldest.next();
+            if (entry.getKey().equals(topic)) break;
+            bytes -= sizeOf(entry.getKey(), entry.getValue());
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns a copy of the entries whose topic matches the filter, which may
+     * use the Mqtt + and # wildcards.
+     */
+    public synchronized List<Map.Entry<String, byte[]>> snapshot(String topicFilter) {
+        List<Map.Entry<String, byte[]>> matches = new ArrayList<Map.Entry<String, byte[]>>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (matches(topicFilter, entry.getKey())) {
+                matches.add(new AbstractMap.SimpleImmutableEntry<String, byte[]>(entry.getKey(), entry.getValue()));
+            }
+        }
+        return matches;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String toString() {
+        return "entries=" + entries.size() + " bytes=" + bytes + "/" + maxBytes + " evictions=" + evictions;
+    }
+
+    /**
+     * Mqtt topic filter matching: '+' matches one level, '#' matches the
+     * rest, including none. Wildcards at the first level do not match
+     * topics starting with '$'.
+     */
+    static boolean matches(String filter, String topic) {
+        if (topic.startsWith("$") && (filter.startsWith("+") || filter.startsWith("#"))) return false;
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) return true;
+            if (i >= topicLevels.length) return false;
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) return false;
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static long sizeOf(String topic, byte[] payload) {
+        return ENTRY_OVERHEAD_BYTES + 2L * topic.length() + payload.length;
+    }
+}
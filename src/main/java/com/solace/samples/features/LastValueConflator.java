@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * An MqttCallback stage that hands the real handler only the latest message
+ * for each topic.
+ *
+ * Arriving messages go into a map keyed by topic, replacing any update the
+ * handler has not seen yet. A dispatcher thread takes every entry out of
+ * the map and calls the handler for each:
+ *  - with a tick (tickMillis > 0), once per tick
+ *  - without one (tickMillis == 0), as soon as the handler is free again
+ *
+ * The map only holds topics with an update pending, so memory is bounded
+ * by the number of distinct topics times the message size, however fast
+ * messages arrive. The peak of both is reported along with the conflation
+ * ratio (messages received per message handled).
+ */
+public class LastValueConflator implements MqttCallback {
+
+    private final MqttCallback delegate;
+    private final long tickMillis;
+
+    private final ConcurrentHashMap<String, MqttMessage> latest = new ConcurrentHashMap<String, MqttMessage>();
+    private final Semaphore wakeup = new Semaphore(0);
+    private volatile boolean running = false;
+    private Thread dispatcher;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong peakPendingTopics = new AtomicLong();
+    private final AtomicLong peakPendingBytes = new AtomicLong();
+
+    public LastValueConflator(MqttCallback delegate, long tickMillis) {
+        this.delegate = delegate;
+        this.tickMillis = tickMillis;
+    }
+
+    public synchronized void start() {
+        running = true;
+        dispatcher = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, "conflator");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stops the dispatcher after it has handed over what is pending.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        wakeup.release();
+        if (dispatcher != null) dispatcher.join();
+    }
+
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        received.incrementAndGet();
+        MqttMessage previous = latest.put(topic, message);
+        long bytes = pendingBytes.addAndGet(message.getPayload().length
+                - (previous == null ? 0 : previous.getPayload().length));
+        updatePeak(peakPendingBytes, bytes);
+        if (previous == null) {
+            updatePeak(peakPendingTopics, latest.size());
+            // A topic became pending: wake the dispatcher if it waits for work
+            if (tickMillis == 0) wakeup.release();
+        }
+    }
+
+    public void connectionLost(Throwable cause) {
+        delegate.connectionLost(cause);
+    }
+
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        delegate.deliveryComplete(token);
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Messages received per message passed to the handler.
+     */
+    public double getConflationRatio() {
+        long count = delivered.get();
+        return count == 0 ? 0 : (double) received.get() / count;
+    }
+
+    public long getPeakPendingTopics() {
+        return peakPendingTopics.get();
+    }
+
+    public long getPeakPendingBytes() {
+        return peakPendingBytes.get();
+    }
+
+    public String toString() {
+        return "received=" + received.get() + " delivered=" + delivered.get() +
+                String.format(" conflationRatio=%.1f", getConflationRatio()) +
+                " peakPendingTopics=" + peakPendingTopics.get() +
+                " peakPendingBytes=" + peakPendingBytes.get();
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                if (tickMillis > 0) {
+                    wakeup.tryAcquire(tickMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    wakeup.acquire();
+                }
+                wakeup.drainPermits();
+            } catch (InterruptedException e) {
+                break;
+            }
+            drain();
+        }
+        drain();
+    }
+
+    private void drain() {
+        for (String topic : latest.keySet()) {
+            MqttMessage message = latest.remove(topic);
+            if (message == null) continue;
+            pendingBytes.addAndGet(-message.getPayload().length);
+            delivered.incrementAndGet();
+            try {
+                delegate.messageArrived(topic, message);
+            } catch (Exception e) {
+                System.out.println("Exception handling message on " + topic + ": " + e);
+            }
+        }
+    }
+
+    private static void updatePeak(AtomicLong peak, long value) {
+        long current;
+        while (value > (current = peak.get()) && !peak.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+}
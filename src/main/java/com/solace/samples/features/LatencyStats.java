@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.Arrays;
+
+/**
+ * A small fixed-size latency histogram.
+ *
+ * Values are kept in microseconds, in buckets that split every power of two
+ * into 8 steps, so percentiles are accurate to within 12.5% while the whole
+ * histogram stays a few KB no matter how many values are recorded.
+ */
+public class LatencyStats {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets[bucketOf(micros)]++;
+        count++;
+        totalMicros += micros;
+        if (micros > maxMicros) maxMicros = micros;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMeanMicros() {
+        return count == 0 ? 0 : totalMicros / count;
+    }
+
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile
+     * (0-100), capped at the largest value recorded.
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(rank, 1)) return Math.min(upperBoundOf(i), maxMicros);
+        }
+        return maxMicros;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    public synchronized String toString() {
+        return "count=" + count +
+                " mean=" + getMeanMicros() + "us" +
+                " p50=" + getPercentileMicros(50) + "us" +
+                " p99=" + getPercentileMicros(99) + "us" +
+                " max=" + maxMicros + "us";
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (power - 3)) & (SUB_BUCKETS - 1);
+        return (power - 2) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int power = bucket / SUB_BUCKETS + 2;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (power - 3)) - 1;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttTopic;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the Mqtt hot path: publish, message
+ * arrival and request/reply round trips.
+ *
+ * The events are disabled unless the recording enables them, e.g. with the
+ * settings file shipped in the distribution:
+ *
+ *   -XX:StartFlightRecording:settings=default,settings=jfr/mqtt-samples.jfc,filename=mqtt.jfr
+ *
+ * When disabled, shouldCommit() is false and no field is set, so the JIT
+ * can drop the event allocation and the cost is close to nothing. Events
+ * are recorded without stack traces to keep the enabled cost low as well.
+ */
+public final class MqttFlightEvents {
+
+    @Name("com.solace.samples.mqtt.Publish")
+    @Label("MQTT Publish")
+    @Category({ "Solace", "MQTT" })
+    @Description("A publish call, from start until Paho reports it complete")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class PublishEvent extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("QoS")
+        int qos;
+    }
+
+    @Name("com.solace.samples.mqtt.MessageArrived")
+    @Label("MQTT Message Arrived")
+    @Category({ "Solace", "MQTT" })
+    @Description("Handling of a received message in messageArrived")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ArrivalEvent extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("QoS")
+        int qos;
+
+        @Label("Duplicate")
+        boolean duplicate;
+    }
+
+    @Name("com.solace.samples.mqtt.RequestReply")
+    @Label("MQTT Request/Reply")
+    @Category({ "Solace", "MQTT" })
+    @Description("Requestor: from sending a request to receiving its reply. Replier: from receiving a request to sending its reply")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class RequestReplyEvent extends Event {
+        @Label("Role")
+        String role;
+
+        @Label("Correlation Id")
+        String correlationId;
+
+        @Label("Topic")
+        String topic;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("QoS")
+        int qos;
+    }
+
+    private MqttFlightEvents() {
+    }
+
+    /**
+     * Publishes through a blocking MqttClient and records a publish event.
+     * The call returns once the message is sent (QoS 0) or acknowledged
+     * (QoS 1), so the event spans publish start to completion.
+     */
+    public static void publish(MqttClient client, String topic, MqttMessage message) throws MqttException {
+        PublishEvent event = new PublishEvent();
+        event.begin();
+        client.publish(topic, message);
+        commitPublish(event, topic, message);
+    }
+
+    /**
+     * Publishes through an MqttTopic and records a publish event. The call
+     * returns once the message is sent, so for QoS 1 the event does not
+     * include waiting for the acknowledgement.
+     */
+    public static MqttDeliveryToken publish(MqttTopic topic, MqttMessage message) throws MqttException {
+        PublishEvent event = new PublishEvent();
+        event.begin();
+        MqttDeliveryToken token = topic.publish(message);
+        commitPublish(event, topic.getName(), message);
+        return token;
+    }
+
+    /**
+     * Publishes through an asynchronous client and records a publish event
+     * when Paho reports the publish complete, from the Paho callback thread.
+     * The listener, if not null, is called after that as usual.
+     */
+    public static IMqttDeliveryToken publish(IMqttAsyncClient client, final String topic, final MqttMessage message,
+            Object userContext, final IMqttActionListener listener) throws MqttException {
+        final PublishEvent event = new PublishEvent();
+        event.begin();
+        return client.publish(topic, message, userContext, new IMqttActionListener() {
+
+            public void onSuccess(IMqttToken asyncActionToken) {
+                commitPublish(event, topic, message);
+                if (listener != null) listener.onSuccess(asyncActionToken);
+            }
+
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                if (listener != null) listener.onFailure(asyncActionToken, exception);
+            }
+        });
+    }
+
+    /**
+     * Wraps a callback so that each messageArrived call is recorded.
+     */
+    public static MqttCallback recordArrivals(final MqttCallback delegate) {
+        return new MqttCallback() {
+
+            public void messageArrived(String topic, MqttMessage message) throws Exception {
+                ArrivalEvent event = new ArrivalEvent();
+                event.begin();
+                try {
+                    delegate.messageArrived(topic, message);
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.topic = topic;
+                        event.size = message.getPayload().length;
+                        event.qos = message.getQos();
+                        event.duplicate = message.isDuplicate();
+                        event.commit();
+                    }
+                }
+            }
+
+            public void connectionLost(Throwable cause) {
+                delegate.connectionLost(cause);
+            }
+
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                delegate.deliveryComplete(token);
+            }
+        };
+    }
+
+    private static void commitPublish(PublishEvent event, String topic, MqttMessage message) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.topic = topic;
+            event.size = message.getPayload().length;
+            event.qos = message.getQos();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a request/reply round trip. The event may be committed
+     * from another thread, such as the Paho callback thread.
+     */
+    public static RequestReplyEvent beginRequestReply() {
+        RequestReplyEvent event = new RequestReplyEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and records a round trip started with {@link #beginRequestReply()}.
+     * The topic and message describe the request (replier) or the reply
+     * (requestor).
+     */
+    public static void commitRequestReply(RequestReplyEvent event, String role, String correlationId,
+            String topic, MqttMessage message) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.role = role;
+            event.correlationId = correlationId;
+            event.topic = topic;
+            event.size = message.getPayload().length;
+            event.qos = message.getQos();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An optional header line at the start of a message payload.
+ *
+ * MQTT 3.1.1 has no user properties, so producers that want to attach
+ * metadata put a single line of key=value pairs in front of the body:
+ *
+ *   @ts=1650000000000;ttl=5000
+ *   ...body...
+ *
+ * The line starts with '@' and ends with '\n'. Payloads that do not start
+ * with '@' have no header and are left untouched. Keys used by the samples:
+ *
+ *   ts       producer timestamp, epoch milliseconds
+ *   ttl      time to live after ts, milliseconds
+ *   deadline absolute deadline, epoch milliseconds
+ *   pub      publisher id, for duplicate detection with seq
+ *   seq      per-publisher sequence number, increasing
+ *   id       unique message id, for duplicate detection without pub/seq
+ */
+public class PayloadHeader {
+
+    static final byte MARKER = '@';
+
+    private final Map<String, String> fields;
+    private final int bodyOffset;
+
+    private PayloadHeader(Map<String, String> fields, int bodyOffset) {
+        this.fields = fields;
+        this.bodyOffset = bodyOffset;
+    }
+
+    /**
+     * Parses the header of a payload, or returns null if it has none.
+     */
+    public static PayloadHeader parse(byte[] payload) {
+        if (payload.length == 0 || payload[0] != MARKER) return null;
+        int end = 1;
+        while (end < payload.length && payload[end] != '\n') end++;
+        if (end == payload.length) return null;
+
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        String line = new String(payload, 1, end - 1, StandardCharsets.UTF_8);
+        for (String pair : line.split(";")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) fields.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return new PayloadHeader(fields, end + 1);
+    }
+
+    /**
+     * Returns a payload made of a header line with the given fields followed
+     * by the body.
+     */
+    public static byte[] stamp(Map<String, ?> fields, byte[] body) {
+        StringBuilder line = new StringBuilder().append((char) MARKER);
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            if (line.length() > 1) line.append(';');
+            line.append(field.getKey()).append('=').append(field.getValue());
+        }
+        byte[] header = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[header.length + body.length];
+        System.arraycopy(header, 0, payload, 0, header.length);
+        System.arraycopy(body, 0, payload, header.length, body.length);
+        return payload;
+    }
+
+    public String get(String key) {
+        return fields.get(key);
+    }
+
+    /**
+     * Returns a numeric field, or the default if it is missing or not a number.
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = fields.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Offset in the payload where the body starts.
+     */
+    public int getBodyOffset() {
+        return bodyOffset;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+
+/**
+ * An SSLSocketFactory meant to be shared by every Mqtt client in the JVM so
+ * that reconnects resume a cached TLS session instead of doing a full
+ * handshake.
+ *
+ * All sockets come from one SSLContext, whose client session cache is keyed
+ * by broker host and port. After a broker fails over, the first client to
+ * reconnect pays for a full handshake and the rest can resume, which skips
+ * the certificate exchange and the key agreement on both sides.
+ *
+ * The factory counts handshakes and how many of them resumed a session, and
+ * times each connection from socket creation to handshake completion (TCP
+ * connect plus TLS handshake). Handshakes are also counted per second over
+ * the last minute, so a reconnect storm shows up as a recent and a peak
+ * handshake rate rather than vanishing into a lifetime average.
+ *
+ * For ssl:// URLs, install the shared instance with:
+ *
+ *   ResumingSSLSocketFactory.configure(host, connOpts);
+ *
+ * and print its counters on exit with ResumingSSLSocketFactory.report(host).
+ */
+public class ResumingSSLSocketFactory extends SSLSocketFactory {
+
+    static final int SESSION_CACHE_SIZE = 1000;
+    static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    // Seconds of per-second handshake counts kept, and the window the
+    // recent handshake rate is taken over
+    static final int RATE_HISTORY_SECONDS = 60;
+    static final int RATE_WINDOW_SECONDS = 10;
+
+    private static ResumingSSLSocketFactory sharedFactory;
+
+    private final SSLSocketFactory delegate;
+    private final long createdAt = System.nanoTime();
+    private final long[] secondOfSlot = new long[RATE_HISTORY_SECONDS];
+    private final long[] handshakesInSlot = new long[RATE_HISTORY_SECONDS];
+    private long peakHandshakesPerSecond = 0;
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final LatencyStats connectLatency = new LatencyStats();
+
+    /**
+     * Creates a factory on the given context, sizing its session cache.
+     */
+    public ResumingSSLSocketFactory(SSLContext context) {
+        context.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+        context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        this.delegate = context.getSocketFactory();
+    }
+
+    /**
+     * Returns the factory shared by all clients, which trusts the JVM's
+     * default trust store (javax.net.ssl.trustStore).
+     */
+    public static synchronized ResumingSSLSocketFactory shared() {
+        if (sharedFactory == null) {
+            try {
+                SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, null, null);
+                sharedFactory = new ResumingSSLSocketFactory(context);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create TLS context", e);
+            }
+        }
+        return sharedFactory;
+    }
+
+    /**
+     * Installs the shared factory when the host is an ssl:// URL, and leaves
+     * the connect options alone otherwise.
+     */
+    public static void configure(String host, MqttConnectOptions connOpts) {
+        if (host.toLowerCase().startsWith("ssl://")) {
+            connOpts.setSocketFactory(shared());
+        }
+    }
+
+    /**
+     * Prints the shared factory's counters when the host is an ssl:// URL.
+     */
+    public static void report(String host) {
+        if (host.toLowerCase().startsWith("ssl://")) {
+            System.out.println("TLS " + shared());
+        }
+    }
+
+    public long getHandshakeCount() {
+        return handshakes.get();
+    }
+
+    public long getResumedCount() {
+        return resumed.get();
+    }
+
+    public double getResumedRatio() {
+        long count = handshakes.get();
+        return count == 0 ? 0 : (double) resumed.get() / count;
+    }
+
+    /**
+     * Handshakes per second over the last RATE_WINDOW_SECONDS, or since the
+     * factory was created if that is more recent.
+     */
+    public synchronized double getHandshakeRate() {
+        long now = secondsSinceCreated();
+        long window = Math.min(RATE_WINDOW_SECONDS, now + 1);
+        long count = 0;
+        for (long second = now - window + 1; second <= now; second++) {
+            int slot = (int) (second % RATE_HISTORY_SECONDS);
+            if (secondOfSlot[slot] == second) count += handshakesInSlot[slot];
+        }
+        return (double) count / window;
+    }
+
+    /**
+     * The most handshakes completed within any one second so far.
+     */
+    public synchronized long getPeakHandshakeRate() {
+        return peakHandshakesPerSecond;
+    }
+
+    public LatencyStats getConnectLatency() {
+        return connectLatency;
+    }
+
+    public String toString() {
+        return "handshakes=" + handshakes.get() +
+                " resumed=" + resumed.get() +
+                String.format(" resumedRatio=%.2f handshakeRate=%.1f/s", getResumedRatio(), getHandshakeRate()) +
+                " (last " + RATE_WINDOW_SECONDS + "s) peakHandshakeRate=" + getPeakHandshakeRate() + "/s" +
+                " connect: " + connectLatency;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    /**
+     * The unconnected socket Paho asks for; Paho connects it and starts the
+     * handshake itself.
+     */
+    @Override
+    public Socket createSocket() throws IOException {
+        return track((SSLSocket) delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        return track((SSLSocket) delegate.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connect(createSocket(), new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localHost, localPort));
+        return connect(socket, new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connect(createSocket(), new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        return connect(socket, new InetSocketAddress(address, port));
+    }
+
+    private Socket connect(Socket socket, SocketAddress address) throws IOException {
+        socket.connect(address);
+        return socket;
+    }
+
+    private synchronized void countHandshake() {
+        long second = secondsSinceCreated();
+        int slot = (int) (second % RATE_HISTORY_SECONDS);
+        if (secondOfSlot[slot] != second) {
+            secondOfSlot[slot] = second;
+            handshakesInSlot[slot] = 0;
+        }
+        handshakesInSlot[slot]++;
+        peakHandshakesPerSecond = Math.max(peakHandshakesPerSecond, handshakesInSlot[slot]);
+    }
+
+    private long secondsSinceCreated() {
+        return (System.nanoTime() - createdAt) / 1000000000L;
+    }
+
+    private SSLSocket track(SSLSocket socket) {
+        // Check the broker certificate against the host name in the URL
+        SSLParameters params = socket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(params);
+
+        final long start = System.nanoTime();
+        final long startMillis = System.currentTimeMillis();
+        socket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                connectLatency.record(System.nanoTime() - start);
+                handshakes.incrementAndGet();
+                countHandshake();
+                // A resumed session keeps the creation time of the session it
+                // was resumed from, which is older than this socket
+                if (event.getSession().getCreationTime() < startMillis) {
+                    resumed.incrementAndGet();
+                }
+            }
+        });
+        return socket;
+    }
+}
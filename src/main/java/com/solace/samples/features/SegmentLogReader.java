@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the segment files written by {@link SegmentLogWriter}.
+ *
+ * Segments are memory-mapped read-only and records are decoded in place: the
+ * payload is handed out as a read-only slice of the mapping, so nothing is
+ * copied until the caller needs the bytes.
+ *
+ * Usage:
+ *
+ *   reader.seek(fromTimeNanos);   // optional
+ *   while (reader.next()) {
+ *       reader.getTopic(); reader.getPayload(); ...
+ *   }
+ */
+public class SegmentLogReader {
+
+    private final File directory;
+    private final long[] segmentNumbers;
+
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment;
+
+    // The current record
+    private long receiveTimeNanos;
+    private int qos;
+    private String topic;
+    private ByteBuffer payload;
+
+    public SegmentLogReader(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("No such log directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentNumbers = segmentNumbers(directory);
+    }
+
+    /**
+     * Positions the reader so that the next call to {@link #next()} returns
+     * the first record received at or after the given time.
+     */
+    public void seek(long timeNanos) throws IOException {
+        if (segmentNumbers.length == 0) return;
+
+        // Find the last segment that starts at or before the requested time
+        int target = 0;
+        long[] targetEntries = new long[0];
+        for (int i = 0; i < segmentNumbers.length; i++) {
+            long[] entries = readIndex(segmentNumbers[i]);
+            if (entries.length == 0 || entries[0] > timeNanos) break;
+            target = i;
+            targetEntries = entries;
+        }
+        openSegment(target);
+
+        // Jump to the last index entry at or before the requested time, then
+        // scan forward record by record
+        for (int i = 0; i < targetEntries.length && targetEntries[i] <= timeNanos; i += 2) {
+            segment.position((int) targetEntries[i + 1]);
+        }
+        while (true) {
+            int previousSegment = segmentIndex;
+            int previousPosition = segment.position();
+            if (!next()) return;
+            if (receiveTimeNanos >= timeNanos) {
+                // Step back so that next() returns this record again. A record
+                // found in a later segment is the first one in it.
+                segment.position(segmentIndex == previousSegment ? previousPosition : 0);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advances to the next record, moving on to the following segment when
+     * the current one is exhausted. Returns false at the end of the log.
+     */
+    public boolean next() throws IOException {
+        if (segment == null) {
+            if (segmentIndex + 1 >= segmentNumbers.length) return false;
+            openSegment(segmentIndex + 1);
+        }
+        while (segment.remaining() < 4 || segment.getInt(segment.position()) == 0) {
+            if (segmentIndex + 1 >= segmentNumbers.length) return false;
+            openSegment(segmentIndex + 1);
+        }
+
+        int length = segment.getInt();
+        int end = segment.position() + length;
+        receiveTimeNanos = segment.getLong();
+        qos = segment.get();
+        byte[] topicBytes = new byte[segment.getShort() & 0xFFFF];
+        segment.get(topicBytes);
+        topic = new String(topicBytes, StandardCharsets.UTF_8);
+        int payloadLength = segment.getInt();
+        ByteBuffer slice = segment.slice();
+        slice.limit(payloadLength);
+        payload = slice.asReadOnlyBuffer();
+        segment.position(end);
+        return true;
+    }
+
+    public long getReceiveTimeNanos() {
+        return receiveTimeNanos;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * The payload of the current record as a read-only view onto the mapped
+     * segment. Only valid until the next call to {@link #next()}.
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    private void openSegment(int index) throws IOException {
+        File segmentFile = new File(directory, segmentName(segmentNumbers[index]) + SegmentLogWriter.SEGMENT_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "r")) {
+            segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        segmentIndex = index;
+    }
+
+    /**
+     * Returns the index of a segment as a flat array of
+     * (receive time, position) pairs.
+     */
+    private long[] readIndex(long segmentNumber) throws IOException {
+        File indexFile = new File(directory, segmentName(segmentNumber) + SegmentLogWriter.INDEX_SUFFIX);
+        long[] entries = new long[(int) (indexFile.length() / 12) * 2];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                entries[i] = in.readLong();
+                entries[i + 1] = in.readInt();
+            }
+        } catch (EOFException e) {
+            // Index of a segment that is still being written; use what is there
+        }
+        return entries;
+    }
+
+    static String segmentName(long segmentNumber) {
+        return String.format("segment-%010d", segmentNumber);
+    }
+
+    static long[] segmentNumbers(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return new long[0];
+        long[] numbers = new long[files.length];
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("segment-") && name.endsWith(SegmentLogWriter.SEGMENT_SUFFIX)) {
+                numbers[count++] = Long.parseLong(
+                        name.substring("segment-".length(), name.length() - SegmentLogWriter.SEGMENT_SUFFIX.length()));
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+}
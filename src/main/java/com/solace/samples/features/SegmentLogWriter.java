@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends received messages to memory-mapped, size-rolled segment files.
+ *
+ * Each segment "segment-N.log" holds records laid out as:
+ *
+ *   int    record length (bytes following this field)
+ *   long   receive time (epoch nanoseconds)
+ *   byte   QoS
+ *   short  topic length (unsigned), followed by the UTF-8 topic
+ *   int    payload length, followed by the payload
+ *
+ * The segment is pre-sized and zero filled, so a record length of 0 marks the
+ * end of the written data. A sparse time index "segment-N.idx" holds
+ * (receive time, position) pairs: one for the first record of the segment and
+ * then one every index interval, which lets a reader seek by time without
+ * scanning the whole log.
+ */
+public class SegmentLogWriter implements Closeable {
+
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 2 + 4;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long indexIntervalNanos;
+
+    private long segmentNumber;
+    private MappedByteBuffer segment;
+    private DataOutputStream index;
+    private long lastIndexedTime;
+    private long recordCount = 0;
+
+    public SegmentLogWriter(File directory, int segmentSize, long indexIntervalMillis) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create log directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexIntervalNanos = indexIntervalMillis * 1000000L;
+
+        // Continue after any segments already in the directory rather than
+        // overwriting a previous recording
+        long[] existing = SegmentLogReader.segmentNumbers(directory);
+        this.segmentNumber = existing.length == 0 ? 0 : existing[existing.length - 1] + 1;
+        openSegment(segmentSize);
+    }
+
+    /**
+     * Appends one message. Rolls to a new segment when the record does not
+     * fit in the current one; a record bigger than the configured segment
+     * size gets a segment of its own.
+     */
+    public synchronized void append(String topic, byte[] payload, int qos, long receiveTimeNanos) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + topicBytes.length + payload.length;
+
+        if (segment.remaining() < recordSize + 4) {
+            rollSegment(Math.max(segmentSize, recordSize + 4));
+        }
+
+        int position = segment.position();
+        if (position == 0 || receiveTimeNanos - lastIndexedTime >= indexIntervalNanos) {
+            index.writeLong(receiveTimeNanos);
+            index.writeInt(position);
+            lastIndexedTime = receiveTimeNanos;
+        }
+
+        segment.putInt(recordSize - 4);
+        segment.putLong(receiveTimeNanos);
+        segment.put((byte) qos);
+        segment.putShort((short) topicBytes.length);
+        segment.put(topicBytes);
+        segment.putInt(payload.length);
+        segment.put(payload);
+        recordCount++;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+
+    private void rollSegment(int size) throws IOException {
+        closeSegment();
+        segmentNumber++;
+        openSegment(size);
+    }
+
+    private void openSegment(int size) throws IOException {
+        File segmentFile = new File(directory, SegmentLogReader.segmentName(segmentNumber) + SEGMENT_SUFFIX);
+        File indexFile = new File(directory, SegmentLogReader.segmentName(segmentNumber) + INDEX_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            // The mapping stays valid after the channel is closed
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    }
+
+    private void closeSegment() throws IOException {
+        segment.force();
+        index.close();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * One simulated device of a {@link FleetSimulator}: a non-blocking Mqtt
+ * 3.1.1 connection that subscribes to its own topic and publishes to it.
+ *
+ * Only what a device needs is implemented: CONNECT, SUBSCRIBE, QoS 0
+ * PUBLISH, PINGREQ and DISCONNECT out, and CONNACK, SUBACK, PUBLISH and
+ * PINGRESP in. There is no thread per device: every method is called from
+ * the simulator's event loop thread, which keeps a device down to its
+ * socket and a few small buffers.
+ */
+class SimulatedDevice {
+
+    enum State { CONNECTING, CONNACK_WAIT, SUBACK_WAIT, ACTIVE, CLOSED }
+
+    /**
+     * Events a device reports to the event loop.
+     */
+    interface Listener {
+        void ready(SimulatedDevice device);
+        void received(SimulatedDevice device, ByteBuffer payload);
+        void failed(SimulatedDevice device, State stateAtFailure, String reason);
+    }
+
+    private static final int CONNECT = 0x10;
+    private static final int CONNACK = 0x20;
+    private static final int PUBLISH = 0x30;
+    private static final int SUBSCRIBE = 0x82;
+    private static final int SUBACK = 0x90;
+    private static final int PINGREQ = 0xC0;
+    private static final int PINGRESP = 0xD0;
+    private static final int DISCONNECT = 0xE0;
+
+    private final String clientId;
+    private final String topic;
+    private final String username;
+    private final String password;
+    private final int keepAliveSeconds;
+    private final Listener listener;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+    private ByteBuffer in = ByteBuffer.allocate(128);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+
+    // Set by the event loop: when the connect started, and when the device
+    // next publishes (or pings)
+    long openNanos;
+    long nextActionNanos;
+
+    SimulatedDevice(String clientId, String topic, String username, String password,
+            int keepAliveSeconds, Listener listener) {
+        this.clientId = clientId;
+        this.topic = topic;
+        this.username = username;
+        this.password = password;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.listener = listener;
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void open(Selector selector, InetSocketAddress address) throws IOException {
+        openNanos = System.nanoTime();
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        // Small kernel buffers: devices send little, and this is what lets
+        // thousands of sockets fit
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 8 * 1024);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 8 * 1024);
+        key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        if (channel.connect(address)) connected();
+    }
+
+    /**
+     * Handles a ready key from the selector.
+     */
+    void handle() {
+        try {
+            if (key.isConnectable() && channel.finishConnect()) connected();
+            if (key.isValid() && key.isWritable()) flush();
+            if (key.isValid() && key.isReadable()) read();
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    void publish(byte[] payload) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer packet = header(PUBLISH, 2 + topicBytes.length + payload.length);
+        packet.putShort((short) topicBytes.length).put(topicBytes).put(payload);
+        send(packet);
+    }
+
+    void ping() {
+        send(header(PINGREQ, 0));
+    }
+
+    /**
+     * Sends DISCONNECT, if connected, and closes the socket.
+     */
+    void close() {
+        if (state == State.ACTIVE && out.isEmpty()) {
+            // Best effort: if the socket cannot take it now, just close
+            ByteBuffer packet = header(DISCONNECT, 0);
+            packet.flip();
+            try {
+                channel.write(packet);
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        closeChannel();
+    }
+
+    private void connected() {
+        state = State.CONNACK_WAIT;
+        key.interestOps(SelectionKey.OP_READ);
+        sendConnect();
+    }
+
+    private void sendConnect() {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer packet = header(CONNECT, 10 + 2 + id.length + 2 + user.length + 2 + pass.length);
+        packet.putShort((short) 4).put("MQTT".getBytes(StandardCharsets.US_ASCII));
+        packet.put((byte) 4);                       // protocol level 3.1.1
+        packet.put((byte) (0x80 | 0x40 | 0x02));    // username, password, clean session
+        packet.putShort((short) keepAliveSeconds);
+        packet.putShort((short) id.length).put(id);
+        packet.putShort((short) user.length).put(user);
+        packet.putShort((short) pass.length).put(pass);
+        send(packet);
+    }
+
+    private void sendSubscribe() {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer packet = header(SUBSCRIBE, 2 + 2 + topicBytes.length + 1);
+        packet.putShort((short) 1);                 // packet identifier
+        packet.putShort((short) topicBytes.length).put(topicBytes);
+        packet.put((byte) 0);                       // QoS 0
+        send(packet);
+    }
+
+    private void send(ByteBuffer packet) {
+        if (state == State.CLOSED) return;
+        packet.flip();
+        out.add(packet);
+        try {
+            flush();
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Writes what the socket takes now and waits for OP_WRITE for the rest.
+     */
+    private void flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer packet = out.peek();
+            channel.write(packet);
+            if (packet.hasRemaining()) break;
+            out.poll();
+        }
+        if (key.isValid()) {
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(in);
+        if (n < 0) {
+            fail("connection closed by broker");
+            return;
+        }
+        in.flip();
+        while (state != State.CLOSED && in.remaining() >= 2) {
+            // Fixed header: type byte, then a 1-4 byte remaining length
+            int start = in.position();
+            int next = start + 1;
+            int length = 0;
+            boolean complete = false;
+            for (int shift = 0; next < in.limit() && shift < 28; shift += 7) {
+                int b = in.get(next++) & 0xFF;
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+            }
+            if (!complete || in.limit() - next < length) {
+                if (complete && in.capacity() < next - start + length) {
+                    // Make room for a packet larger than the buffer
+                    ByteBuffer larger = ByteBuffer.allocate(next - start + length);
+                    larger.put(in);
+                    in = larger;
+                    return;
+                }
+                break;
+            }
+            ByteBuffer body = in.duplicate();
+            body.position(next).limit(next + length);
+            in.position(next + length);
+            packet(in.get(start) & 0xFF, body.slice());
+        }
+        in.compact();
+    }
+
+    private void packet(int type, ByteBuffer body) {
+        switch (type & 0xF0) {
+        case CONNACK:
+            if (body.get(1) != 0) {
+                fail("connection refused, return code " + body.get(1));
+            } else {
+                state = State.SUBACK_WAIT;
+                sendSubscribe();
+            }
+            break;
+        case SUBACK:
+            if ((body.get(2) & 0x80) != 0) {
+                fail("subscription refused");
+            } else {
+                state = State.ACTIVE;
+                listener.ready(this);
+            }
+            break;
+        case PUBLISH:
+            int topicLength = body.getShort() & 0xFFFF;
+            body.position(body.position() + topicLength);
+            // Packet identifier, only there for QoS 1 and 2
+            if ((type & 0x06) != 0) body.getShort();
+            listener.received(this, body.slice());
+            break;
+        case PINGRESP:
+            break;
+        default:
+            fail("unexpected packet type 0x" + Integer.toHexString(type));
+        }
+    }
+
+    /**
+     * Closes the connection and reports it to the listener as failed.
+     */
+    void fail(String reason) {
+        if (state == State.CLOSED) return;
+        State stateAtFailure = state;
+        // The connection is broken, so close without a DISCONNECT
+        closeChannel();
+        listener.failed(this, stateAtFailure, reason);
+    }
+
+    private void closeChannel() {
+        state = State.CLOSED;
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private static ByteBuffer header(int type, int remainingLength) {
+        ByteBuffer packet = ByteBuffer.allocate(1 + 4 + remainingLength);
+        packet.put((byte) type);
+        int length = remainingLength;
+        do {
+            int b = length % 128;
+            length /= 128;
+            packet.put((byte) (length > 0 ? b | 0x80 : b));
+        } while (length > 0);
+        return packet;
+    }
+}
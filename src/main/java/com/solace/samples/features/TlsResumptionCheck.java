@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Checks TLS session resumption locally, without a broker
+ *
+ * Generates a self-signed certificate for localhost with keytool, starts a
+ * TLS server on a free port, and connects to it repeatedly: first with a new
+ * {@link ResumingSSLSocketFactory} per connection (every handshake is full),
+ * then with one shared factory (every handshake after the first should
+ * resume). Exits with status 1 if the shared factory resumed nothing.
+ *
+ */
+public class TlsResumptionCheck {
+
+    static final int CONNECTIONS = 50;
+    static final char[] STORE_PASSWORD = "changeit".toCharArray();
+
+    public void run(String... args) throws IOException, GeneralSecurityException, InterruptedException {
+        System.out.println("TlsResumptionCheck initializing...");
+
+        // Create a self-signed certificate for localhost
+        File keyStoreFile = File.createTempFile("tls-check", ".p12");
+        keyStoreFile.delete();
+        keyStoreFile.deleteOnExit();
+        Process keytool = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool",
+                "-genkeypair", "-alias", "broker", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+                "-storepass", new String(STORE_PASSWORD))
+                .redirectErrorStream(true).start();
+        if (keytool.waitFor() != 0) {
+            System.out.println("keytool failed to create a certificate. Exiting");
+            System.exit(-1);
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keyStoreFile)) {
+            keyStore.load(in, STORE_PASSWORD);
+        }
+
+        // Start a TLS server that sends one byte after the handshake, so the
+        // client reads the session ticket, then waits for one byte back
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, STORE_PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+        final SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                while (!server.isClosed()) {
+                    try (Socket socket = server.accept()) {
+                        socket.getOutputStream().write(1);
+                        socket.getInputStream().read();
+                    } catch (IOException e) {
+                        // Closed, or the client went away
+                    }
+                }
+            }
+        }, "tls-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("TLS server listening on localhost:" + server.getLocalPort());
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+
+        // Without a shared session cache every handshake is a full one
+        LatencyStats fullLatency = new LatencyStats();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            ResumingSSLSocketFactory factory = new ResumingSSLSocketFactory(newClientContext(tmf));
+            connect(factory, server.getLocalPort());
+            waitForHandshakes(factory, 1);
+            fullLatency.record(factory.getConnectLatency().getMeanMicros() * 1000);
+        }
+
+        // With one shared factory all but the first handshake can resume
+        ResumingSSLSocketFactory shared = new ResumingSSLSocketFactory(newClientContext(tmf));
+        for (int i = 0; i < CONNECTIONS; i++) {
+            connect(shared, server.getLocalPort());
+        }
+        waitForHandshakes(shared, CONNECTIONS);
+
+        System.out.println("\nResults:" +
+                "\n\tFactory per connection: connect " + fullLatency +
+                "\n\tShared factory:         " + shared + "\n");
+        server.close();
+
+        if (shared.getResumedCount() == 0) {
+            System.out.println("No TLS sessions were resumed. Exiting");
+            System.exit(1);
+        }
+        System.out.println("TLS sessions were resumed. Exiting");
+        System.exit(0);
+    }
+
+    private static SSLContext newClientContext(TrustManagerFactory tmf) throws GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    /**
+     * Connects the way Paho does: an unconnected socket, then connect, then
+     * the handshake.
+     */
+    private static void connect(ResumingSSLSocketFactory factory, int port) throws IOException {
+        try (SSLSocket socket = (SSLSocket) factory.createSocket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 5000);
+            socket.startHandshake();
+            socket.getInputStream().read();
+            socket.getOutputStream().write(1);
+        }
+    }
+
+    /**
+     * Handshake listeners run on their own thread, so give them a moment.
+     */
+    private static void waitForHandshakes(ResumingSSLSocketFactory factory, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && factory.getHandshakeCount() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, GeneralSecurityException, InterruptedException {
+        new TlsResumptionCheck().run(args);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * A Mqtt topic subscriber that records every received message to a segment
+ * log, for later replay with {@link TopicReplayer}
+ *
+ */
+public class TopicRecorder {
+
+    static boolean isShutdown = false;
+
+    // Segments roll over at 64MB and the time index gets an entry every 100ms
+    static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final long INDEX_INTERVAL_MILLIS = 100;
+
+    public void run(String... args) throws IOException {
+        System.out.println("TopicRecorder initializing...");
+
+        String host = args[0];
+        String username = args[1];
+        String password = args[2];
+        File logDir = new File(args[3]);
+        // Topic filter the client will subscribe to, same as TopicSubscriber by default
+        final String subTopic = args.length > 4 ? args[4] : "solace/samples/+/direct/#";
+
+        final SegmentLogWriter writer = new SegmentLogWriter(logDir, SEGMENT_SIZE, INDEX_INTERVAL_MILLIS);
+
+        // Receive timestamps are taken from the monotonic clock, anchored to
+        // the wall clock once, so that inter-arrival gaps are exact on replay
+        final long epochNanosAtStart = System.currentTimeMillis() * 1000000L;
+        final long nanoTimeAtStart = System.nanoTime();
+
+        try {
+            // Create an Mqtt client
+            MqttClient mqttClient = new MqttClient(host, "HelloWorldRecorder_" + UUID.randomUUID().toString().substring(0,8));
+            MqttConnectOptions connOpts = new MqttConnectOptions();
+            connOpts.setCleanSession(true);
+            connOpts.setUserName(username);
+            connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
+
+            // Connect the client
+            System.out.println("Connecting to Solace messaging at " + host);
+            mqttClient.connect(connOpts);
+            System.out.println("Connected");
+
+            // Callback - Anonymous inner-class for receiving messages
+            mqttClient.setCallback(new MqttCallback() {
+
+                public void messageArrived(String topic, MqttMessage message) throws Exception {
+                    // Append the message to the log as-is; no printing on the
+                    // hot path so the recorder keeps up with production rates
+                    long receiveTime = epochNanosAtStart + (System.nanoTime() - nanoTimeAtStart);
+                    writer.append(topic, message.getPayload(), message.getQos(), receiveTime);
+                }
+
+                public void connectionLost(Throwable cause) {
+                    System.out.println("Connection to Solace messaging lost!" + cause.getMessage());
+                    isShutdown = true;
+                }
+
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+
+            });
+
+            // Subscribe with QoS 1 so that the QoS each message was published
+            // with is preserved in the recording
+            System.out.println("Subscribing client to topic: " + subTopic);
+            mqttClient.subscribe(subTopic, 1);
+            System.out.println("Recording to " + logDir + ". Press [ENTER] to quit.");
+
+            try {
+                while (System.in.available() == 0 && !isShutdown) {
+                    Thread.sleep(1000);  // wait 1 second
+                }
+            } catch (InterruptedException e) {
+                // Thread.sleep() interrupted... probably getting shut down
+            }
+
+            // Disconnect the client
+            if (mqttClient.isConnected()) mqttClient.disconnect();
+            writer.close();
+            ResumingSSLSocketFactory.report(host);
+            System.out.println("Recorded " + writer.getRecordCount() + " messages. Exiting");
+
+            System.exit(0);
+        } catch (MqttException me) {
+            System.out.println("Exception:   " + me);
+            System.out.println("Reason Code: " + me.getReasonCode());
+            System.out.println("Message:     " + me.getMessage());
+            if (me.getCause() != null) System.out.println("Cause:       " + me.getCause());
+            me.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Check command line arguments
+        if (args.length < 4) {
+            System.out.println("Usage: topicRecorder <tcp|ssl>://<host:port> <client-username> <client-password> <log-dir> [topic-filter]");
+            System.out.println();
+            System.exit(-1);
+        }
+        new TopicRecorder().run(args);
+    }
+}
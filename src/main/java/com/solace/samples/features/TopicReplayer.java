@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * A Mqtt topic publisher that replays a segment log recorded by
+ * {@link TopicRecorder}
+ *
+ * The speed argument is a multiple of the original rate: 1 replays with the
+ * recorded inter-arrival gaps, 10 replays ten times faster, and "max"
+ * publishes as fast as the connection allows.
+ *
+ */
+public class TopicReplayer {
+
+    public void run(String... args) throws IOException {
+        System.out.println("TopicReplayer initializing...");
+
+        String host = args[0];
+        String username = args[1];
+        String password = args[2];
+        File logDir = new File(args[3]);
+        String speedArg = args.length > 4 ? args[4] : "1";
+        // A speed of 0 means no pacing at all
+        double speed = speedArg.equalsIgnoreCase("max") ? 0 : Double.parseDouble(speedArg);
+
+        SegmentLogReader reader = new SegmentLogReader(logDir);
+        if (args.length > 5) {
+            // Start from the first message received at or after the given time
+            reader.seek(Long.parseLong(args[5]) * 1000000L);
+        }
+
+        try {
+            // Create an Mqtt client
+            MqttClient mqttClient = new MqttClient(host, "HelloWorldReplayer_" + UUID.randomUUID().toString().substring(0,8));
+            MqttConnectOptions connOpts = new MqttConnectOptions();
+            connOpts.setCleanSession(true);
+            connOpts.setUserName(username);
+            connOpts.setPassword(password.toCharArray());
+            // Use the shared TLS socket factory for ssl:// URLs
+            ResumingSSLSocketFactory.configure(host, connOpts);
+
+            // Connect the client
+            System.out.println("Connecting to Solace messaging at " + host);
+            mqttClient.connect(connOpts);
+            System.out.println("Connected");
+
+            System.out.println("Replaying " + logDir + " at " + (speed == 0 ? "maximum speed" : speed + "x"));
+
+            long count = 0;
+            long firstReceiveTime = 0;
+            long replayStart = System.nanoTime();
+            while (reader.next()) {
+                if (count == 0) firstReceiveTime = reader.getReceiveTimeNanos();
+
+                if (speed > 0) {
+                    // Wait until this message is due, relative to the first one
+                    long due = replayStart + (long) ((reader.getReceiveTimeNanos() - firstReceiveTime) / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+
+                // The record is read in place from the mapped segment; Paho
+                // needs a byte[] so the payload is copied exactly once here
+                ByteBuffer payload = reader.getPayload();
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                MqttMessage message = new MqttMessage(bytes);
+                message.setQos(reader.getQos());
+
+                // Publish the message
+                MqttFlightEvents.publish(mqttClient, reader.getTopic(), message);
+                count++;
+            }
+            long elapsedMillis = (System.nanoTime() - replayStart) / 1000000L;
+
+            // Disconnect the client
+            mqttClient.disconnect();
+
+            ResumingSSLSocketFactory.report(host);
+            System.out.println("Replayed " + count + " messages in " + elapsedMillis + " ms. Exiting");
+
+            System.exit(0);
+        } catch (MqttException me) {
+            System.out.println("Exception:   " + me);
+            System.out.println("Reason Code: " + me.getReasonCode());
+            System.out.println("Message:     " + me.getMessage());
+            if (me.getCause() != null) System.out.println("Cause:       " + me.getCause());
+            me.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Check command line arguments
+        if (args.length < 4) {
+            System.out.println("Usage: topicReplayer <tcp|ssl>://<host:port> <client-username> <client-password> <log-dir> [speed|max] [from-epoch-millis]");
+            System.out.println();
+            System.exit(-1);
+        }
+        new TopicReplayer().run(args);
+    }
+}
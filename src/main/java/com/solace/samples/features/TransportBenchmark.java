@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Measures each {@link TransportProfile} against a broker
+ *
+ * For every profile the client connects, then:
+ *  - sends small messages one at a time to a topic it subscribes to itself
+ *    and times the round trip through the broker
+ *  - sends a burst of large messages the same way and times how long it
+ *    takes for all of them to come back
+ *
+ */
+public class TransportBenchmark {
+
+    static final int RTT_SAMPLES = 500;
+    static final int RTT_PAYLOAD_SIZE = 64;
+    static final int BULK_MESSAGES = 500;
+    static final int BULK_PAYLOAD_SIZE = 64 * 1024;
+
+    public void run(String... args) {
+        System.out.println("TransportBenchmark initializing...");
+
+        String host = args[0];
+        String username = args[1];
+        String password = args[2];
+
+        TransportProfile[] profiles = TransportProfile.values();
+        if (args.length > 3) {
+            profiles = new TransportProfile[] { TransportProfile.valueOf(args[3].toUpperCase()) };
+        }
+
+        try {
+            System.out.println(String.format("%n%-12s %10s %10s %10s %10s %12s",
+                    "profile", "connect", "rtt p50", "rtt p99", "rtt max", "bulk MB/s"));
+            for (TransportProfile profile : profiles) {
+                runProfile(host, username, password, profile);
+            }
+            System.out.println();
+            System.out.println("Exiting");
+
+            System.exit(0);
+        } catch (MqttException me) {
+            System.out.println("Exception:   " + me);
+            System.out.println("Reason Code: " + me.getReasonCode());
+            System.out.println("Message:     " + me.getMessage());
+            if (me.getCause() != null) System.out.println("Cause:       " + me.getCause());
+            me.printStackTrace();
+        } catch (InterruptedException e) {
+            System.out.println("I was awoken while waiting");
+        }
+    }
+
+    private void runProfile(String host, String username, String password, TransportProfile profile)
+            throws MqttException, InterruptedException {
+        String clientId = "TransportBenchmark_" + UUID.randomUUID().toString().substring(0,8);
+        final String rttTopic = "solace/samples/transport/" + clientId + "/rtt";
+        final String bulkTopic = "solace/samples/transport/" + clientId + "/bulk";
+
+        // Create an Mqtt client with the profile's socket factory and timeouts
+        MqttClient mqttClient = new MqttClient(host, clientId);
+        MqttConnectOptions connOpts = new MqttConnectOptions();
+        connOpts.setCleanSession(true);
+        connOpts.setUserName(username);
+        connOpts.setPassword(password.toCharArray());
+        profile.apply(connOpts);
+
+        long connectStart = System.nanoTime();
+        mqttClient.connect(connOpts);
+        long connectMicros = (System.nanoTime() - connectStart) / 1000;
+
+        final Semaphore rttReceived = new Semaphore(0);
+        final Semaphore bulkReceived = new Semaphore(0);
+        final AtomicLong bulkBytes = new AtomicLong();
+
+        // Callback - Anonymous inner-class for receiving our own messages back
+        mqttClient.setCallback(new MqttCallback() {
+
+            public void messageArrived(String topic, MqttMessage message) throws Exception {
+                if (topic.equals(rttTopic)) {
+                    rttReceived.release();
+                } else {
+                    bulkBytes.addAndGet(message.getPayload().length);
+                    bulkReceived.release();
+                }
+            }
+
+            public void connectionLost(Throwable cause) {
+                System.out.println("Connection to Solace messaging lost!" + cause.getMessage());
+                rttReceived.release(RTT_SAMPLES);
+                bulkReceived.release(BULK_MESSAGES);
+            }
+
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        mqttClient.subscribe(rttTopic, 0);
+        mqttClient.subscribe(bulkTopic, 0);
+
+        // Round trip: one small message at a time
+        LatencyStats rtt = new LatencyStats();
+        byte[] small = new byte[RTT_PAYLOAD_SIZE];
+        for (int i = 0; i < RTT_SAMPLES; i++) {
+            MqttMessage message = new MqttMessage(small);
+            message.setQos(0);
+            long start = System.nanoTime();
+            mqttClient.publish(rttTopic, message);
+            if (!rttReceived.tryAcquire(5, TimeUnit.SECONDS)) {
+                System.out.println(profile + ": timed out waiting for round trip message");
+                break;
+            }
+            rtt.record(System.nanoTime() - start);
+        }
+
+        // Throughput: a burst of large messages
+        byte[] large = new byte[BULK_PAYLOAD_SIZE];
+        long bulkStart = System.nanoTime();
+        for (int i = 0; i < BULK_MESSAGES; i++) {
+            MqttMessage message = new MqttMessage(large);
+            message.setQos(0);
+            mqttClient.publish(bulkTopic, message);
+        }
+        // QoS 0 messages may be discarded under load, so stop waiting once
+        // nothing has arrived for a while and count what did arrive
+        int received = 0;
+        long lastArrival = System.nanoTime();
+        while (received < BULK_MESSAGES && bulkReceived.tryAcquire(5, TimeUnit.SECONDS)) {
+            received++;
+            lastArrival = System.nanoTime();
+        }
+        if (received < BULK_MESSAGES) {
+            System.out.println(profile + ": " + (BULK_MESSAGES - received) + " of " + BULK_MESSAGES + " bulk messages were not received");
+        }
+        double seconds = (lastArrival - bulkStart) / 1e9;
+        double megabytesPerSecond = bulkBytes.get() / (1024.0 * 1024.0) / seconds;
+
+        System.out.println(String.format("%-12s %8dus %8dus %8dus %8dus %12.1f",
+                profile, connectMicros, rtt.getPercentileMicros(50), rtt.getPercentileMicros(99),
+                rtt.getMaxMicros(), megabytesPerSecond));
+
+        // Disconnect the client
+        mqttClient.disconnect();
+        mqttClient.close();
+    }
+
+    public static void main(String[] args) {
+        // Check command line arguments
+        if (args.length < 3) {
+            System.out.println("Usage: transportBenchmark tcp://<host:port> <client-username> <client-password> [latency|throughput|constrained]");
+            System.out.println();
+            System.exit(-1);
+        }
+
+        new TransportBenchmark().run(args);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+
+/**
+ * Socket and connection settings tuned for a kind of workload.
+ *
+ * LATENCY    - Nagle disabled so small messages leave immediately, moderate
+ *              buffers, short connect timeout.
+ * THROUGHPUT - Nagle enabled so writes coalesce into full segments, large
+ *              buffers so the TCP window can open up on long, fast links.
+ * CONSTRAINED- Small buffers and long timeouts for devices short on memory
+ *              or on slow, lossy links; infrequent keep-alive pings.
+ *
+ * Apply a profile to the connect options before connecting:
+ *
+ *   TransportProfile.LATENCY.apply(connOpts);
+ *
+ * Only tcp:// connections use the plain socket factory; Paho requires an
+ * SSLSocketFactory for ssl:// URLs.
+ */
+public enum TransportProfile {
+
+    //          nodelay  send buf     recv buf     tcp ka  connect(s)  mqtt ka(s)
+    LATENCY    (true,    64 * 1024,   64 * 1024,   true,   5,          30),
+    THROUGHPUT (false,   1024 * 1024, 1024 * 1024, true,   10,         60),
+    CONSTRAINED(false,   8 * 1024,    8 * 1024,    true,   30,         300);
+
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final boolean keepAlive;
+    private final int connectTimeoutSeconds;
+    private final int mqttKeepAliveSeconds;
+
+    TransportProfile(boolean tcpNoDelay, int sendBufferSize, int receiveBufferSize,
+            boolean keepAlive, int connectTimeoutSeconds, int mqttKeepAliveSeconds) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.keepAlive = keepAlive;
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+        this.mqttKeepAliveSeconds = mqttKeepAliveSeconds;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public int getMqttKeepAliveSeconds() {
+        return mqttKeepAliveSeconds;
+    }
+
+    /**
+     * Installs a {@link TunedSocketFactory} for this profile and sets the
+     * connect timeout and Mqtt keep-alive interval. Paho passes the connect
+     * timeout to Socket.connect, so it is set here rather than on the socket.
+     */
+    public void apply(MqttConnectOptions connOpts) {
+        connOpts.setSocketFactory(new TunedSocketFactory(this));
+        connOpts.setConnectionTimeout(connectTimeoutSeconds);
+        connOpts.setKeepAliveInterval(mqttKeepAliveSeconds);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-2022 Solace Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.solace.samples.features;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import javax.net.SocketFactory;
+
+/**
+ * A SocketFactory that applies a {@link TransportProfile} to every socket it
+ * creates.
+ *
+ * Paho asks for an unconnected socket and connects it itself, so the options
+ * are set before the connection is made. That matters for the receive buffer:
+ * the TCP window scale is agreed during the handshake and a larger buffer set
+ * afterwards cannot use it.
+ */
+public class TunedSocketFactory extends SocketFactory {
+
+    private final TransportProfile profile;
+
+    public TunedSocketFactory(TransportProfile profile) {
+        this.profile = profile;
+    }
+
+    public TransportProfile getProfile() {
+        return profile;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(profile.isTcpNoDelay());
+        socket.setSendBufferSize(profile.getSendBufferSize());
+        socket.setReceiveBufferSize(profile.getReceiveBufferSize());
+        socket.setKeepAlive(profile.isKeepAlive());
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connect(createSocket(), new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localHost, localPort));
+        return connect(socket, new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connect(createSocket(), new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        return connect(socket, new InetSocketAddress(address, port));
+    }
+
+    private Socket connect(Socket socket, SocketAddress address) throws IOException {
+        socket.connect(address, profile.getConnectTimeoutSeconds() * 1000);
+        return socket;
+    }
+}